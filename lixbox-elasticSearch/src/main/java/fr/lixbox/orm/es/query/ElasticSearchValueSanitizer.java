@@ -23,12 +23,11 @@
  ******************************************************************************/
 package fr.lixbox.orm.es.query;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import fr.lixbox.common.helper.StringTokenizer;
 import fr.lixbox.common.util.StringUtil;
 import fr.lixbox.io.json.JsonUtil;
+import fr.lixbox.orm.entity.query.SearchValueSanitizer;
 
 public class ElasticSearchValueSanitizer
 {
@@ -41,33 +40,26 @@ public class ElasticSearchValueSanitizer
     
     public static  List<String> restoreFieldValueToList(Object oValues)
     {
-        List<String> arrays = new ArrayList<>();
-        String values = (String) oValues;
-        values = values.replace("[ ", "").replace(" ]", "").replace("\\[ ", "").replace(" \\]", "").replace(" , ", ",");
-        StringTokenizer tokenizer = new StringTokenizer(values, ",");
-        arrays.addAll(tokenizer.getTokens());
-        return arrays;
+        return SearchValueSanitizer.restoreList((String) oValues);
     }
     
     
     
     public static String sanitizeValue(Object value)
     {
-        String result = "";
+        String result;
         if (value==null || value instanceof String && StringUtil.isEmpty((String)value))
         {
             result="";
         }
-        else if (value instanceof String && StringUtil.isNotEmpty((String)value))
+        else if (value instanceof String)
         {
-            result = (String) value;
+            result = SearchValueSanitizer.sanitize((String) value, false);
         }
         else
         {
-            result = JsonUtil.transformObjectToJson(value, false);
-            result = result.replace('"',' ');
+            result = SearchValueSanitizer.sanitize(JsonUtil.transformObjectToJson(value, false), true);
         }
-        result = result.replace('-', '_').replace('@', '_').replace('.', '_').trim();
         return result;
     }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.entity.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cette classe normalise en une seule passe les valeurs transmises aux
+ * moteurs de recherche (RediSearch, Elasticsearch).
+ * 
+ * Les caractères sont traités par une table de correspondance et écrits
+ * dans un tampon réutilisé par thread: chaque appel produit au plus une
+ * chaîne, et aucune si la valeur est déjà normalisée.
+ * 
+ * @author ludovic.terral
+ */
+public final class SearchValueSanitizer
+{
+    // ----------- Attibuts -----------
+    private static final int TABLE_SIZE = 128;
+    private static final int MAX_CACHED_BUFFER = 4096;
+    private static final String SPECIAL_CHARACTERS = ",.<>{}[]\"':;!@#$%^&*()-+=~|/\\?";
+    
+    /** remplacement des caractères pour l'indexation, 0 si inchangé */
+    private static final char[] REPLACEMENTS = new char[TABLE_SIZE];
+    /** caractères à échapper dans une requête RediSearch ou Lucene */
+    private static final boolean[] SPECIALS = new boolean[TABLE_SIZE];
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+    
+    static
+    {
+        REPLACEMENTS['-'] = '_';
+        REPLACEMENTS['@'] = '_';
+        REPLACEMENTS['.'] = '_';
+        for (int ix=0; ix<SPECIAL_CHARACTERS.length(); ix++)
+        {
+            SPECIALS[SPECIAL_CHARACTERS.charAt(ix)] = true;
+        }
+    }
+    
+    
+    
+    //----------- Methodes -----------
+    private SearchValueSanitizer()
+    {
+        //singleton
+    }
+    
+    
+    
+    /**
+     * Cette methode normalise une valeur: '-', '@' et '.' deviennent '_',
+     * les guillemets d'un json deviennent des espaces et les blancs de
+     * début et de fin sont supprimés.
+     * @param value
+     * @param json true si la valeur est un json dont il faut retirer les
+     * guillemets
+     * 
+     * @return la valeur normalisée
+     */
+    public static String sanitize(String value, boolean json)
+    {
+        int length = value.length();
+        int start = 0;
+        while (start<length && map(value.charAt(start), json)<=' ')
+        {
+            start++;
+        }
+        int end = length;
+        while (end>start && map(value.charAt(end-1), json)<=' ')
+        {
+            end--;
+        }
+        int first = start;
+        while (first<end && map(value.charAt(first), json)==value.charAt(first))
+        {
+            first++;
+        }
+        if (first==end)
+        {
+            return start==0 && end==length?value:value.substring(start, end);
+        }
+        StringBuilder buffer = acquireBuffer();
+        buffer.append(value, start, first);
+        for (int ix=first; ix<end; ix++)
+        {
+            buffer.append(map(value.charAt(ix), json));
+        }
+        return release(buffer);
+    }
+    
+    
+    
+    /**
+     * Cette methode échappe par '\' les caractères spéciaux de la syntaxe
+     * de requête RediSearch et Lucene.
+     * @param value
+     * 
+     * @return la valeur échappée
+     */
+    public static String escape(String value)
+    {
+        int length = value.length();
+        int first = 0;
+        while (first<length && !isSpecial(value.charAt(first)))
+        {
+            first++;
+        }
+        if (first==length)
+        {
+            return value;
+        }
+        StringBuilder buffer = acquireBuffer();
+        buffer.append(value, 0, first);
+        for (int ix=first; ix<length; ix++)
+        {
+            char current = value.charAt(ix);
+            if (isSpecial(current))
+            {
+                buffer.append('\\');
+            }
+            buffer.append(current);
+        }
+        return release(buffer);
+    }
+    
+    
+    
+    public static boolean isSpecial(char character)
+    {
+        return character<TABLE_SIZE && SPECIALS[character] || Character.isWhitespace(character);
+    }
+    
+    
+    
+    /**
+     * Cette methode restaure la liste des valeurs d'un champ indexé sous
+     * la forme "[ a , b ]" ou "\[ a , b \]".
+     * @param values
+     * 
+     * @return la liste des valeurs
+     */
+    public static List<String> restoreList(String values)
+    {
+        List<String> result = new ArrayList<>();
+        StringBuilder buffer = acquireBuffer();
+        int length = values.length();
+        int ix = 0;
+        while (ix<length)
+        {
+            if (values.startsWith("[ ", ix) || values.startsWith(" ]", ix))
+            {
+                ix += 2;
+            }
+            else if (values.startsWith(" \\]", ix))
+            {
+                ix += 3;
+            }
+            else if (values.startsWith(" , ", ix) || values.charAt(ix)==',')
+            {
+                addToken(result, buffer);
+                ix += values.charAt(ix)==','?1:3;
+            }
+            else
+            {
+                buffer.append(values.charAt(ix++));
+            }
+        }
+        addToken(result, buffer);
+        release(buffer);
+        return result;
+    }
+    
+    
+    
+    private static char map(char character, boolean json)
+    {
+        if (character>=TABLE_SIZE)
+        {
+            return character;
+        }
+        if (json && character=='"')
+        {
+            return ' ';
+        }
+        char replacement = REPLACEMENTS[character];
+        return replacement!=0?replacement:character;
+    }
+    
+    
+    
+    private static void addToken(List<String> tokens, StringBuilder buffer)
+    {
+        if (buffer.length()>0)
+        {
+            tokens.add(buffer.toString());
+            buffer.setLength(0);
+        }
+    }
+    
+    
+    
+    private static StringBuilder acquireBuffer()
+    {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+    
+    
+    
+    private static String release(StringBuilder buffer)
+    {
+        String result = buffer.toString();
+        buffer.setLength(0);
+        if (buffer.capacity()>MAX_CACHED_BUFFER)
+        {
+            buffer.trimToSize();
+        }
+        return result;
+    }
+}
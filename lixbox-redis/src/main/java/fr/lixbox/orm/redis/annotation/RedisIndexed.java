@@ -0,0 +1,62 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import redis.clients.jedis.search.Schema.FieldType;
+
+/**
+ * Cette annotation déclare un attribut d'une entité comme champ de
+ * l'index RediSearch.
+ * 
+ * Le processeur RedisIndexedProcessor génère à la compilation, pour
+ * chaque entité annotée, un accesseur sans réflexion qui décrit le
+ * schéma et écrit les valeurs d'index dans le hash.
+ * 
+ * @author ludovic.terral
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface RedisIndexed
+{
+    /**
+     * @return le nom du champ dans l'index, celui de l'attribut par défaut.
+     */
+    String name() default "";
+    
+    FieldType type() default FieldType.TEXT;
+    
+    boolean sortable() default false;
+    
+    /**
+     * @return le poids du champ, pour les champs TEXT.
+     */
+    double weight() default 1.0;
+}
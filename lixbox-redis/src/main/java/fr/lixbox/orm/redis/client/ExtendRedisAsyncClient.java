@@ -0,0 +1,342 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.lixbox.common.exceptions.BusinessException;
+import fr.lixbox.orm.redis.model.BulkResult;
+import fr.lixbox.orm.redis.model.EQuery;
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+
+/**
+ * Cette classe expose les operations de l'ExtendRedisClient sous forme
+ * de CompletableFuture.
+ *
+ * Les GET unitaires émis en parallèle sont regroupés automatiquement
+ * en un seul MGET par vague, et les merge unitaires en un seul pipeline
+ * de scripts MERGE par vague: le débit suit donc le nombre de requêtes
+ * en vol et non la taille du pool. Les autres opérations ne sont pas 
+ * regroupées: ce sont les appels bloquants du client synchrone, exécutés
+ * sur l'executor, qui occupent un thread le temps de l'appel.
+ *
+ * L'executor par défaut utilise des threads démons, il ne retient donc 
+ * pas l'arrêt de la JVM si close() n'est pas appelé.
+ *
+ * @author ludovic.terral
+ */
+public class ExtendRedisAsyncClient implements Closeable
+{
+    // ----------- Attibuts -----------
+    private static final int DEFAULT_PARALLELISM = 20;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ExtendRedisClient client;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int maxBatchSize;
+    private final Queue<PendingCall<String, String>> pendingGets = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean getFlushScheduled = new AtomicBoolean(false);
+    private final Queue<PendingCall<RedisSearchDao, RedisSearchDao>> pendingMerges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mergeFlushScheduled = new AtomicBoolean(false);
+
+
+
+    //----------- Methodes -----------
+    public ExtendRedisAsyncClient(ExtendRedisClient client)
+    {
+        this(client, Executors.newFixedThreadPool(DEFAULT_PARALLELISM, runnable -> {
+            Thread thread = new Thread(runnable, "redis-async-"+THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), true, DEFAULT_MAX_BATCH_SIZE);
+    }
+    public ExtendRedisAsyncClient(ExtendRedisClient client, ExecutorService executor, int maxBatchSize)
+    {
+        this(client, executor, false, maxBatchSize);
+    }
+    private ExtendRedisAsyncClient(ExtendRedisClient client, ExecutorService executor, boolean ownExecutor,
+            int maxBatchSize)
+    {
+        this.client = client;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+
+
+    /**
+     * Cette methode renvoie la valeur associée à une clé. L'appel rejoint
+     * le prochain MGET groupé. Une clé nulle est refusée par son seul 
+     * futur pour ne pas faire échouer le MGET des autres appelants.
+     * @param key
+     *
+     * @return la valeur, null si la clé est absente.
+     */
+    public CompletableFuture<String> get(String key)
+    {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (key==null)
+        {
+            result.completeExceptionally(new IllegalArgumentException("La cle est obligatoire"));
+            return result;
+        }
+        enqueue(pendingGets, getFlushScheduled, new PendingCall<>(key, result), this::flushGets);
+        return result;
+    }
+
+
+
+    public CompletableFuture<List<String>> mget(String... keys)
+    {
+        return CompletableFuture.supplyAsync(() -> client.mget(keys), executor);
+    }
+
+
+
+    /**
+     * Cette methode enregistre un objet. L'appel rejoint le prochain 
+     * pipeline groupé de mergeAll, un échec ne concerne que son futur.
+     * @param object
+     *
+     * @return l'objet enregistré
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends RedisSearchDao> CompletableFuture<T> merge(T object)
+    {
+        CompletableFuture<RedisSearchDao> result = new CompletableFuture<>();
+        if (object==null)
+        {
+            result.complete(null);
+        }
+        else
+        {
+            enqueue(pendingMerges, mergeFlushScheduled, new PendingCall<>(object, result), this::flushMerges);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) result;
+    }
+
+
+
+    public <T extends RedisSearchDao> CompletableFuture<T> findById(Class<T> entityClass, String id)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return client.findById(entityClass, id);
+            }
+            catch (BusinessException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+
+
+    public <T extends RedisSearchDao> CompletableFuture<List<T>> findByExpression(Class<T> entityClass,
+            EQuery query)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return client.findByExpression(entityClass, query);
+            }
+            catch (BusinessException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+    public <T extends RedisSearchDao> CompletableFuture<List<T>> findByExpression(Class<T> entityClass,
+            String expression)
+    {
+        return findByExpression(entityClass, new EQuery(expression));
+    }
+
+
+
+    /**
+     * Cette methode arrête l'executor s'il a été créé par ce client.
+     * Le client synchrone sous-jacent reste ouvert.
+     */
+    @Override
+    public void close()
+    {
+        if (ownExecutor)
+        {
+            executor.shutdown();
+        }
+    }
+
+
+
+    private <I, R> void enqueue(Queue<PendingCall<I, R>> queue, AtomicBoolean flushScheduled, 
+            PendingCall<I, R> call, Runnable flush)
+    {
+        queue.add(call);
+        if (flushScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(flush);
+            }
+            catch (RejectedExecutionException e)
+            {
+                flushScheduled.set(false);
+                fail(queue, e);
+            }
+        }
+    }
+
+
+
+    private void flushGets()
+    {
+        getFlushScheduled.set(false);
+        List<PendingCall<String, String>> batch = drain(pendingGets);
+        while (!batch.isEmpty())
+        {
+            String[] keys = new String[batch.size()];
+            for (int ix=0; ix<keys.length; ix++)
+            {
+                keys[ix] = batch.get(ix).input;
+            }
+            try
+            {
+                List<String> values = client.mget(keys);
+                for (int ix=0; ix<keys.length; ix++)
+                {
+                    batch.get(ix).future.complete(values.get(ix));
+                }
+            }
+            catch (Exception e)
+            {
+                for (PendingCall<String, String> pending : batch)
+                {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            batch = drain(pendingGets);
+        }
+    }
+
+
+
+    private void flushMerges()
+    {
+        mergeFlushScheduled.set(false);
+        List<PendingCall<RedisSearchDao, RedisSearchDao>> batch = drain(pendingMerges);
+        while (!batch.isEmpty())
+        {
+            List<RedisSearchDao> objects = new ArrayList<>(batch.size());
+            for (PendingCall<RedisSearchDao, RedisSearchDao> pending : batch)
+            {
+                objects.add(pending.input);
+            }
+            try
+            {
+                BulkResult<RedisSearchDao> result = client.mergeAll(objects);
+                for (PendingCall<RedisSearchDao, RedisSearchDao> pending : batch)
+                {
+                    Exception error = result.getError(pending.input);
+                    if (error!=null)
+                    {
+                        pending.future.completeExceptionally(new CompletionException(
+                                new BusinessException("Impossible d'enregistrer l'objet", error)));
+                    }
+                    else
+                    {
+                        pending.future.complete(pending.input);
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                for (PendingCall<RedisSearchDao, RedisSearchDao> pending : batch)
+                {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            batch = drain(pendingMerges);
+        }
+    }
+
+
+
+    private static <I, R> void fail(Queue<PendingCall<I, R>> queue, Exception error)
+    {
+        PendingCall<I, R> pending = queue.poll();
+        while (pending!=null)
+        {
+            pending.future.completeExceptionally(error);
+            pending = queue.poll();
+        }
+    }
+
+
+
+    private <I, R> List<PendingCall<I, R>> drain(Queue<PendingCall<I, R>> queue)
+    {
+        List<PendingCall<I, R>> batch = new ArrayList<>();
+        PendingCall<I, R> pending = queue.poll();
+        while (pending!=null)
+        {
+            batch.add(pending);
+            if (batch.size()>=maxBatchSize)
+            {
+                break;
+            }
+            pending = queue.poll();
+        }
+        return batch;
+    }
+
+
+
+    private static final class PendingCall<I, R>
+    {
+        private final I input;
+        private final CompletableFuture<R> future;
+
+        private PendingCall(I input, CompletableFuture<R> future)
+        {
+            this.input = input;
+            this.future = future;
+        }
+    }
+}
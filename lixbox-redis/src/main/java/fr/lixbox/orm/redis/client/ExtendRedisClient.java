@@ -23,60 +23,134 @@
  ******************************************************************************/
 package fr.lixbox.orm.redis.client;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-
 import fr.lixbox.common.exceptions.BusinessException;
 import fr.lixbox.common.guid.GuidGenerator;
 import fr.lixbox.common.util.CollectionUtil;
 import fr.lixbox.common.util.ExceptionUtil;
 import fr.lixbox.common.util.StringUtil;
-import fr.lixbox.io.json.JsonUtil;
 import fr.lixbox.orm.entity.model.Dao;
 import fr.lixbox.orm.entity.model.OptimisticDao;
+import fr.lixbox.orm.redis.codec.JsonPayloadCodec;
+import fr.lixbox.orm.redis.codec.RedisIndexFieldEncoder;
+import fr.lixbox.orm.redis.codec.RedisPayloadCodec;
+import fr.lixbox.orm.redis.codec.RedisPayloadCodecs;
+import fr.lixbox.orm.redis.model.BulkResult;
 import fr.lixbox.orm.redis.model.EQuery;
+import fr.lixbox.orm.redis.model.MergeResult;
+import fr.lixbox.orm.redis.model.RedisIndexAccessor;
+import fr.lixbox.orm.redis.model.RedisIndexAccessors;
 import fr.lixbox.orm.redis.model.RedisSearchDao;
+import redis.clients.jedis.AbstractPipeline;
 import redis.clients.jedis.Connection;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.RedisProtocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.csc.Cache;
+import redis.clients.jedis.csc.CacheConfig;
+import redis.clients.jedis.csc.CacheFactory;
+import redis.clients.jedis.csc.CacheStats;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.providers.PooledConnectionProvider;
+import redis.clients.jedis.params.SetParams;
 import redis.clients.jedis.search.Document;
-import redis.clients.jedis.search.IndexDefinition;
-import redis.clients.jedis.search.IndexOptions;
+import redis.clients.jedis.search.Query;
 import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.Row;
+import redis.clients.jedis.search.aggr.SortedField;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.JedisClusterHashTag;
+import redis.clients.jedis.util.JedisURIHelper;
+import redis.clients.jedis.util.SafeEncoder;
 
 /**
  * Cette classe interface l'univers redis avec l'univers POJO.
  * 
  * @author ludovic.terral
  */
-public class ExtendRedisClient implements Serializable
+public class ExtendRedisClient implements Serializable, Closeable
 {    
     // ----------- Attibuts -----------
     private static final long serialVersionUID = -3968936170594429132L;
     private static final Log LOG = LogFactory.getLog(ExtendRedisClient.class);
     
     private static final String NO_ENTITY_FIND_WITH_EXPRESSION_MSG = "No entity find with expression ";
-    private static final String KEY_FIELD = "key";
+    static final String KEY_FIELD = "key";
     private static final String TYPE_FIELD = "type_object";
+    private static final String PAYLOAD_FIELD = "payload_object";
+    private static final String VERSION_FIELD = "version_object";
+    private static final int DEFAULT_POOL_SIZE = 20;
+    private static final int DEFAULT_SCAN_COUNT = 1000;
+    private static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+    private static final long DEFAULT_PROBE_INTERVAL = 5000;
+    private static final String WILDCARD = "*";
     
     private transient GenericObjectPoolConfig<Connection> poolConfig;
+    private transient volatile UnifiedJedis jedisClient;
+    private transient RedisIndexRegistry indexRegistry = new RedisIndexRegistry();
+    private transient RedisTypeRegistry typeRegistry = RedisTypeRegistry.getInstance();
+    private transient volatile Cache nearCache;
+    private transient volatile RedisReadRouter readRouter;
+    private transient RedisScriptLibrary scriptLibrary = new RedisScriptLibrary();
+    private transient ReentrantLock poolLock = new ReentrantLock();
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int scanCount = DEFAULT_SCAN_COUNT;
+    private int bulkChunkSize = DEFAULT_BULK_CHUNK_SIZE;
+    private int bulkParallelism = 1;
+    private RedisStorageMode storageMode = RedisStorageMode.KEY_REFERENCE;
+    private RedisReadMode readMode = RedisReadMode.MASTER;
+    private List<HostAndPort> replicaNodes = new ArrayList<>();
+    private int nearCacheSize = 0;
+    private RedisPayloadCodec payloadCodec = JsonPayloadCodec.INSTANCE;
+    private long acquisitionMaxWait = 0;
     private String host="";
     private int port=0;
     private String redisUri="";
+    private Set<HostAndPort> clusterNodes = new HashSet<>();
 
 
     
@@ -100,42 +174,254 @@ public class ExtendRedisClient implements Serializable
     
     public ExtendRedisClient(String host, int port) 
     {
-        this.poolConfig = getConfigForPool(20);
+        this.poolConfig = getConfigForPool(DEFAULT_POOL_SIZE);
         this.host = host;
         this.port = port;
     }
     public ExtendRedisClient(GenericObjectPoolConfig<Connection> poolConfig, String host, int port)
     {
         this.poolConfig = poolConfig;
+        this.poolSize = poolConfig.getMaxTotal();
         this.host = host;
         this.port = port;
     }
     public ExtendRedisClient(GenericObjectPoolConfig<Connection> poolConfig, String redisUri)
     {
         this.poolConfig = poolConfig;
+        this.poolSize = poolConfig.getMaxTotal();
         this.redisUri = redisUri;
     }
     public ExtendRedisClient(String redisUri) 
     {
-        this.poolConfig = getConfigForPool(20);
+        this.poolConfig = getConfigForPool(DEFAULT_POOL_SIZE);
         this.redisUri = redisUri;
     }
+    /**
+     * Ce constructeur ouvre le client en mode cluster: les commandes sont
+     * routées par slot vers le maître qui porte la clé. Les noeuds fournis
+     * servent uniquement à découvrir la topologie.
+     * @param poolConfig configuration du pool de chaque noeud
+     * @param clusterNodes
+     */
+    public ExtendRedisClient(GenericObjectPoolConfig<Connection> poolConfig, Set<HostAndPort> clusterNodes)
+    {
+        this.poolConfig = poolConfig;
+        this.poolSize = poolConfig.getMaxTotal();
+        this.clusterNodes = new HashSet<>(clusterNodes);
+    }
+    public ExtendRedisClient(Set<HostAndPort> clusterNodes)
+    {
+        this(getConfigForPool(DEFAULT_POOL_SIZE), clusterNodes);
+    }
+    
+    
+    
+    public boolean isClusterMode()
+    {
+        return !clusterNodes.isEmpty();
+    }
+    
+    
+    
+    public int getScanCount()
+    {
+        return scanCount;
+    }
+    public void setScanCount(int scanCount)
+    {
+        this.scanCount = scanCount;
+    }
+    
+    
+    
+    public int getBulkChunkSize()
+    {
+        return bulkChunkSize;
+    }
+    public void setBulkChunkSize(int bulkChunkSize)
+    {
+        this.bulkChunkSize = bulkChunkSize;
+    }
+    
+    
+    
+    public int getBulkParallelism()
+    {
+        return bulkParallelism;
+    }
+    public void setBulkParallelism(int bulkParallelism)
+    {
+        this.bulkParallelism = bulkParallelism;
+    }
+    
+    
+    
+    public RedisStorageMode getStorageMode()
+    {
+        return storageMode;
+    }
+    public void setStorageMode(RedisStorageMode storageMode)
+    {
+        this.storageMode = storageMode;
+    }
+    
+    
+    
+    public RedisReadMode getReadMode()
+    {
+        return readMode;
+    }
+    /**
+     * Cette methode fixe le routage par défaut des lectures. Chaque lecture
+     * peut le surcharger, par exemple en MASTER pour relire sa propre 
+     * écriture.
+     * @param readMode
+     */
+    public void setReadMode(RedisReadMode readMode)
+    {
+        this.readMode = readMode;
+    }
+    
+    
+    
+    public List<HostAndPort> getReplicas()
+    {
+        return new ArrayList<>(replicaNodes);
+    }
+    /**
+     * Cette methode déclare les réplicas du maître. Ils ne servent que les
+     * lectures et sont ignorés en mode cluster. Le pool courant est fermé
+     * et recréé à la demande.
+     * @param replicas
+     */
+    public void setReplicas(Collection<HostAndPort> replicas)
+    {
+        this.replicaNodes = new ArrayList<>(replicas);
+        close();
+    }
+    
+    
+    
+    public RedisTypeRegistry getTypeRegistry()
+    {
+        return typeRegistry;
+    }
+    public void setTypeRegistry(RedisTypeRegistry typeRegistry)
+    {
+        this.typeRegistry = typeRegistry;
+    }
+    
+    
+    
+    /**
+     * Cette methode active le cache local des lectures (GET, MGET), tenu à
+     * jour par les invalidations poussées par le serveur en RESP3 via 
+     * CLIENT TRACKING. Le pool courant est fermé et recréé à la demande.
+     * @param maxSize nombre maximal d'entrées conservées
+     */
+    public void enableNearCache(int maxSize)
+    {
+        this.nearCacheSize = maxSize;
+        close();
+    }
+    public void disableNearCache()
+    {
+        this.nearCacheSize = 0;
+        close();
+    }
+    public boolean isNearCacheEnabled()
+    {
+        return nearCacheSize>0;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie les compteurs du cache local: hits, miss,
+     * invalidations et évictions.
+     * 
+     * @return les statistiques ou null si le cache n'est pas actif.
+     */
+    public CacheStats getNearCacheStats()
+    {
+        Cache cache = nearCache;
+        return cache!=null?cache.getStats():null;
+    }
+    
+    
+    
+    /**
+     * Cette methode active l'emprunt borné des connexions, adapté aux 
+     * threads virtuels: au-delà de la taille du pool, les appelants 
+     * attendent sur le pool (verrous java.util.concurrent, sans bloquer 
+     * leur thread porteur) au lieu d'échouer immédiatement. Passé ce 
+     * délai, l'appel lève la JedisException du pool. Le pool courant est
+     * fermé et recréé à la demande.
+     * @param maxWaitMillis attente maximale d'une connexion
+     */
+    public void enableBoundedAcquisition(long maxWaitMillis)
+    {
+        this.acquisitionMaxWait = maxWaitMillis;
+        close();
+    }
+    public void disableBoundedAcquisition()
+    {
+        this.acquisitionMaxWait = 0;
+        close();
+    }
+    
+    
+    
+    public RedisPayloadCodec getPayloadCodec()
+    {
+        return payloadCodec;
+    }
+    /**
+     * Cette methode fixe le format d'écriture des entités. Les valeurs 
+     * déjà stockées restent lisibles grâce à leur marqueur de codec.
+     * @param payloadCodec
+     */
+    public void setPayloadCodec(RedisPayloadCodec payloadCodec)
+    {
+        RedisPayloadCodecs.register(payloadCodec);
+        this.payloadCodec = payloadCodec;
+    }
     
     
     
     public List<String> getKeys(String pattern)
     {
         List<String> result = new ArrayList<>(); 
-        try (JedisPooled redisClient = getJedisPooled())
+        Iterator<String> keys = scanKeys(pattern);
+        while (keys.hasNext())
         {
-            String internamPattern = StringUtil.isEmpty(pattern)?"*":pattern;
-            result.addAll(redisClient.keys(internamPattern));
+            result.add(keys.next());
         }
         return result;
     }
     
     
     
+    /**
+     * Cette methode parcourt de manière incrémentale les clés qui 
+     * correspondent à une pattern, sans charger la liste complète.
+     * @param pattern
+     * 
+     * @return un iterateur sur les clés.
+     */
+    public Iterator<String> scanKeys(String pattern)
+    {
+        String internamPattern = StringUtil.isEmpty(pattern)?WILDCARD:pattern;
+        return new ScanKeyIterator(getRedisClient(), internamPattern, scanCount);
+    }
+    public Stream<String> streamKeys(String pattern)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scanKeys(pattern), 
+                Spliterator.NONNULL), false);
+    }
+    
+    
+    
     /**
      * Cette methode renvoie la valeur associée à une clé
      * @param key
@@ -143,14 +429,15 @@ public class ExtendRedisClient implements Serializable
      * @return null si pas de valeur.
      */
     public String get(String key)
+    {
+        return get(key, readMode);
+    }
+    public String get(String key, RedisReadMode mode)
     {
         String result = "";
         if (key!=null)
         {
-            try (JedisPooled redisClient = getJedisPooled())
-            {
-                result = redisClient.get(key);
-            }
+            result = read(mode, redisClient -> redisClient.get(key));
         }
         return result;
     }
@@ -158,14 +445,15 @@ public class ExtendRedisClient implements Serializable
 
 
     public List<String> mget(String[] arrays)
+    {
+        return mget(arrays, readMode);
+    }
+    public List<String> mget(String[] arrays, RedisReadMode mode)
     {
         List<String> result = new ArrayList<>();
-        try (JedisPooled redisClient = getJedisPooled())
+        if (arrays!=null && arrays.length>0)
         {
-            if (arrays!=null && arrays.length>0)
-            {
-                result.addAll(redisClient.mget(arrays));
-            }
+            result.addAll(read(mode, redisClient -> mget(redisClient, arrays)));
         }
         return result;
     }
@@ -183,13 +471,11 @@ public class ExtendRedisClient implements Serializable
         boolean result = false;
         if (key!=null)
         {
-            try (JedisPooled redisClient = getJedisPooled())
+            UnifiedJedis redisClient = getRedisClient();
+            if (redisClient.del(key)>0)
             {
-                if (redisClient.del(key)>0)
-                {
-                    result = true;
-                } 
-            }
+                result = true;
+            } 
         }
         return result;
     }
@@ -207,12 +493,10 @@ public class ExtendRedisClient implements Serializable
         boolean result = false;
         if (keys!=null)
         {
-            try (JedisPooled redisClient = getJedisPooled())
+            UnifiedJedis redisClient = getRedisClient();
+            if (del(redisClient, keys)>0)
             {
-                if (redisClient.del(keys)>0)
-                {
-                    result = true;
-                }
+                result = true;
             }
         }
         return result;
@@ -220,19 +504,29 @@ public class ExtendRedisClient implements Serializable
     
     
     
+    /**
+     * Cette methode supprime toutes les données. Les empreintes des index
+     * RediSearch, qui survivent à la suppression des données, sont 
+     * conservées.
+     * 
+     * @return true si au moins une clé a été supprimée
+     */
     public boolean clearDb()
     {
         boolean result = false;
-        List<String> keys = getKeys("*");
-        if (CollectionUtil.isNotEmpty(keys))
+        UnifiedJedis redisClient = getRedisClient();
+        ScanKeyIterator scanner = new ScanKeyIterator(redisClient, WILDCARD, scanCount);
+        List<String> keys = scanner.nextPage();
+        while (keys!=null)
         {
-            try (JedisPooled redisClient = getJedisPooled())
+            String[] dataKeys = keys.stream()
+                    .filter(key -> !key.startsWith(RedisIndexRegistry.FINGERPRINT_KEY_PREFIX))
+                    .toArray(String[]::new);
+            if (dataKeys.length>0 && del(redisClient, dataKeys)>0)
             {
-                if (redisClient.del(keys.toArray(new String[0]))>0)
-                {
-                    result = true;
-                }
+                result = true;
             }
+            keys = scanner.nextPage();
         }
         return result;
     }
@@ -242,11 +536,8 @@ public class ExtendRedisClient implements Serializable
     public boolean ping()
     {
         boolean result = false;
-        try (JedisPooled redisClient = getJedisPooled())
-        {
-            redisClient.keys("*");
-            result = true;
-        }
+        UnifiedJedis redisClient = getRedisClient();
+        result = "PONG".equalsIgnoreCase(redisClient.ping());
         return result;
     }
       
@@ -254,20 +545,27 @@ public class ExtendRedisClient implements Serializable
     
     /**
      * Cette methode renvoie le nombre de clés qui correspondent à une pattern.
-     * Si la pattern n'est pas renseigné le wildcar est utilisé.
+     * Si la pattern n'est pas renseigné le wildcar est utilisé. En mode
+     * cluster le DBSIZE ne couvre qu'un noeud, les clés sont donc comptées
+     * par SCAN sur l'ensemble des maîtres.
      * @param pattern
      * 
      * return le nombre de clés.
      */
     public int size(String pattern)
     {
-        String internamPattern = StringUtil.isEmpty(pattern)?"*":pattern;
-        List<String> result  = new ArrayList<>();
-        try (JedisPooled redisClient = getJedisPooled())
+        if ((StringUtil.isEmpty(pattern) || WILDCARD.equals(pattern)) && !isClusterMode())
+        {
+            return (int) getRedisClient().dbSize();
+        }
+        int result = 0;
+        Iterator<String> keys = scanKeys(pattern);
+        while (keys.hasNext())
         {
-            result.addAll(redisClient.keys(internamPattern));
+            keys.next();
+            result++;
         }
-        return result.size();
+        return result;
     }
     
     
@@ -281,8 +579,14 @@ public class ExtendRedisClient implements Serializable
     public boolean containsKey(String pattern)
     {  
         boolean result;
-        List<String> tmp  = getKeys(pattern);
-        result = !tmp.isEmpty();
+        if (isGlobPattern(pattern))
+        {
+            result = scanKeys(pattern).hasNext();
+        }
+        else
+        {
+            result = getRedisClient().exists(pattern);
+        }
         return result;
     }
         
@@ -300,21 +604,19 @@ public class ExtendRedisClient implements Serializable
         boolean result=false;
         if (!StringUtil.isEmpty(key))
         {
-            try (JedisPooled redisClient = getJedisPooled())
-            {
-                result = !StringUtil.isEmpty(redisClient.set(key,value));
-            }
+            UnifiedJedis redisClient = getRedisClient();
+            result = !StringUtil.isEmpty(redisClient.set(key,value));
         }
         return result;
     }
     public boolean put(String key, String value, long ttl)
     {
-        boolean result=put(key,value);
-        try (JedisPooled redisClient = getJedisPooled())
+        boolean result=false;
+        if (!StringUtil.isEmpty(key))
         {
-            redisClient.pexpire(key, ttl);
+            UnifiedJedis redisClient = getRedisClient();
+            result = !StringUtil.isEmpty(redisClient.set(key, value, SetParams.setParams().px(ttl)));
         }
-        result &= true;
         return result;
     }
     
@@ -329,6 +631,10 @@ public class ExtendRedisClient implements Serializable
      */
     public boolean put(Map<String,String> entries)
     {
+        if (isClusterMode())
+        {
+            return putPipelined(entries, null);
+        }
         boolean result;
         List<String> tmp = new ArrayList<>();        
         for (Entry<String, String> entry : entries.entrySet())
@@ -336,22 +642,50 @@ public class ExtendRedisClient implements Serializable
             tmp.add(entry.getKey());
             tmp.add(entry.getValue());
         }                
-        try (JedisPooled redisClient = getJedisPooled())
-        {
-            result = redisClient.mset(tmp.toArray(new String[0])).contains("OK");
-        }
+        UnifiedJedis redisClient = getRedisClient();
+        result = redisClient.mset(tmp.toArray(new String[0])).contains("OK");
         return result;
     }
+    /**
+     * Cette methode enregistre les associations clé valeur avec une durée
+     * de vie. Les SET ... PX sont envoyés par paquets pipelinés.
+     * 
+     * @param entries
+     * @param ttl durée de vie en millisecondes
+     * 
+     * @return true si toutes les écritures sont ok
+     */
     public boolean put(Map<String,String> entries, long ttl)
     {
-        boolean result = put(entries);
-        for (String key : entries.keySet())
+        return putPipelined(entries, SetParams.setParams().px(ttl));
+    }
+    
+    
+    
+    private boolean putPipelined(Map<String,String> entries, SetParams params)
+    {
+        boolean result = true;
+        UnifiedJedis redisClient = getRedisClient();
+        List<Response<String>> responses = new ArrayList<>(Math.min(entries.size(), bulkChunkSize));
+        Iterator<Entry<String, String>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext())
         {
-            try (JedisPooled redisClient = getJedisPooled())
+            try (AbstractPipeline pipeline = redisClient.pipelined())
+            {
+                while (iterator.hasNext() && responses.size()<bulkChunkSize)
+                {
+                    Entry<String, String> entry = iterator.next();
+                    responses.add(params!=null?pipeline.set(entry.getKey(), entry.getValue(), params):
+                        pipeline.set(entry.getKey(), entry.getValue()));
+                }
+                pipeline.sync();
+            }
+            for (Response<String> response : responses)
             {
-                redisClient.pexpire(key, ttl);
+                result &= "OK".equals(response.get());
             }
-        }  
+            responses.clear();
+        }
         return result;
     }
     
@@ -368,13 +702,11 @@ public class ExtendRedisClient implements Serializable
     public Map<String, String> get(String... keys)
     {
         Map<String,String> result = new HashMap<>();
-        try (JedisPooled redisClient = getJedisPooled())
+        UnifiedJedis redisClient = getRedisClient();
+        List<String> values = mget(redisClient, keys);
+        for (int ix=0; ix<keys.length; ix++)
         {
-            List<String> values = redisClient.mget(keys);
-            for (int ix=0; ix<keys.length; ix++)
-            {
-                result.put(keys[ix], values.get(ix));
-            }
+            result.put(keys[ix], values.get(ix));
         }
         return result;
     }
@@ -386,26 +718,46 @@ public class ExtendRedisClient implements Serializable
         Object result = null;        
         if (!StringUtil.isEmpty(key))
         {            
-            String value = get(key);
-            result = JsonUtil.transformJsonToObject(value, getTypeReferenceFromKey(key));
+            Class<?> type = typeRegistry.resolve(extractClassName(key));
+            if (type!=null)
+            {
+                result = RedisPayloadCodecs.decode(getRedisClient().get(SafeEncoder.encode(key)), type);
+            }
         } 
         return result;
     }
     
     
 
-    @SuppressWarnings("unchecked")
     public <T extends Dao> List<T> getTypedFromKeys(List<String> keys)
+    {
+        return getTypedFromKeys(getRedisClient(), keys);
+    }
+    @SuppressWarnings("unchecked")
+    private <T extends Dao> List<T> getTypedFromKeys(UnifiedJedis redisClient, List<String> keys)
     {
         List<T> result = new ArrayList<>();
         if (keys!=null && !keys.isEmpty())
         {            
-            Map<String, String> convertMap = get(keys.toArray(new String[0]));
-            for (Entry<String, String> entry : convertMap.entrySet())
+            List<byte[]> values = mget(redisClient, keys);
+            String lastClassName = null;
+            Class<?> type = null;
+            for (int ix=0; ix<values.size(); ix++)
             {
-                if (StringUtil.isNotEmpty(entry.getValue()))
+                byte[] value = values.get(ix);
+                if (value==null || value.length==0)
+                {
+                    continue;
+                }
+                String className = extractClassName(keys.get(ix));
+                if (!className.equals(lastClassName))
+                {
+                    lastClassName = className;
+                    type = typeRegistry.resolve(className);
+                }
+                if (type!=null)
                 {
-                    result.add((T) JsonUtil.transformJsonToObject(entry.getValue(), getTypeReferenceFromKey(entry.getKey())));
+                    result.add((T) RedisPayloadCodecs.decode(value, type));
                 }
             }
         } 
@@ -414,103 +766,392 @@ public class ExtendRedisClient implements Serializable
     
     
     
+    /**
+     * Cette methode crée ou met à jour l'index RediSearch d'une entité.
+     * Elle permet de préchauffer le registre des index avant les écritures.
+     * @param entityClass
+     * 
+     * @throws BusinessException
+     */
+    public <T extends RedisSearchDao> void ensureIndex(Class<T> entityClass) throws BusinessException
+    {
+        try
+        {
+            ensureIndex(getRedisClient(), entityClass.getDeclaredConstructor().newInstance());
+        }
+        catch (Exception e)
+        {
+            ExceptionUtil.traiterException(e, "Impossible de creer l'index", true);
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode enregistre un objet et son index. Un échec est tracé
+     * et l'objet est renvoyé tel quel, mergeOrThrow le remonte à l'appelant.
+     * @param object
+     * 
+     * @return l'objet
+     */
     public <T extends RedisSearchDao> T merge(T object)
+    {
+        try
+        {
+            mergeOrThrow(object);
+        }
+        catch (BusinessException e)
+        {
+            LOG.fatal(e,e);
+        }
+        return object;
+    }
+    /**
+     * Cette methode enregistre un objet et son index. Toute écriture passe
+     * par le script MERGE et est donc atomique: le paramètre est conservé
+     * pour compatibilité.
+     * @param object
+     * @param atomic sans effet
+     * 
+     * @return l'objet
+     */
+    public <T extends RedisSearchDao> T merge(T object, boolean atomic)
+    {
+        return merge(object);
+    }
+    
+    
+    
+    /**
+     * Cette methode enregistre un objet et son index par un seul appel au
+     * script MERGE. L'écriture est donc toujours atomique, sans MULTI/EXEC.
+     * @param object
+     * 
+     * @return l'objet enregistré
+     * 
+     * @throws BusinessException si le serveur refuse l'écriture
+     */
+    public <T extends RedisSearchDao> T mergeOrThrow(T object) throws BusinessException
     {
         if (object==null) {
             return object;
         }
         
-        //creer ou raffraichir le schema
-        try (JedisPooled redisClient = getJedisPooled())
+        try
         {
-            try 
-            {
-                LOG.debug(redisClient.ftInfo(object.getClass().getName()));
-            }
-            catch(JedisDataException jde)
-            {
-                IndexOptions options = IndexOptions.defaultOptions();
-                if (object.getTTL()>0)
-                {
-                    options.setTemporary(object.getTTL()/1000);
-                }
-                IndexDefinition rule = new IndexDefinition().setPrefixes(object.getClass().getName()+":");
-                options.setDefinition(rule);
-                redisClient.ftCreate(object.getClass().getName(), options, object.getIndexSchema());
-            }      
-                        
-            if (object instanceof OptimisticDao)
-            {
-                ((OptimisticDao)object).setVersion(Calendar.getInstance());
-            }
-            if (StringUtil.isEmpty(object.getOid()))
-            {
-                object.setOid(GuidGenerator.getGUID(object));
-            }
-            String json = JsonUtil.transformObjectToJson(object, false);
-            redisClient.set(object.getKey(), json);
-            Map<String, Object> indexField = new HashMap<>(object.getIndexFieldValues());
-            indexField.put("oid", object.getOid());
-            indexField.put(KEY_FIELD, object.getKey());
-            indexField.put(TYPE_FIELD, object.getClass().getName());
-            Map<String, String> jsonIndexField = convertObjectMapToJsonMap(indexField);
-            redisClient.hset(object.getClass().getName()+":"+object.getOid(), jsonIndexField);
-            if (object.getTTL()>0)
+            UnifiedJedis redisClient = getRedisClient();
+            ensureIndex(redisClient, object);
+            prepareForWrite(object);
+            Object reply = scriptLibrary.call(redisClient, RedisScript.MERGE, getEntityKeys(object), 
+                    getWriteArgs(object));
+            if (!Long.valueOf(1).equals(reply))
             {
-                redisClient.pexpire(object.getKey(), object.getTTL());
-                redisClient.pexpire(object.getClass().getCanonicalName()+":"+object.getOid(), object.getTTL());
+                throw new BusinessException("Reponse inattendue du script d'enregistrement: "+reply);
             }
         }
         catch(Exception e)
         {
-            LOG.fatal(e,e);
+            ExceptionUtil.traiterException(e, "Impossible d'enregistrer l'objet", true);
         }
         return object;
     }
     
     
     
-    public <T extends RedisSearchDao> List<T> merge(List<T> objects)
+    /**
+     * Cette methode enregistre une entité versionnée seulement si la 
+     * version stockée est celle que porte l'entité. La comparaison et 
+     * l'écriture du json et de l'index sont faites atomiquement par un 
+     * script côté serveur, en un aller-retour. Un conflit n'est pas une 
+     * exception: l'appelant recharge l'entité et rejoue sa mise à jour.
+     * Une entité qui porte une version alors qu'elle a été supprimée ou 
+     * a expiré entre-temps est aussi en conflit. Une entité dont le hash 
+     * d'index n'a pas encore de version est enregistrée et reçoit la 
+     * sienne. Une entité non versionnée est enregistrée sans condition.
+     * @param object
+     * 
+     * @return le résultat de l'écriture, la version stockée en cas de conflit
+     * 
+     * @throws BusinessException si le serveur renvoie une réponse inattendue
+     */
+    public <T extends RedisSearchDao> MergeResult<T> compareAndMerge(T object) throws BusinessException
     {
-        if (CollectionUtil.isEmpty(objects))
+        if (!(object instanceof OptimisticDao))
         {
-            return objects;
+            return MergeResult.merged(mergeOrThrow(object));
         }
-        for (T object : objects)
+        OptimisticDao versioned = (OptimisticDao) object;
+        Calendar expected = versioned.getVersion();
+        UnifiedJedis redisClient = getRedisClient();
+        ensureIndex(redisClient, object);
+        if (StringUtil.isEmpty(object.getOid()))
         {
-            merge(object);
+            object.setOid(GuidGenerator.getGUID(object));
         }
-        return objects;
+        Calendar version = Calendar.getInstance();
+        if (expected!=null && version.getTimeInMillis()<=expected.getTimeInMillis())
+        {
+            version.setTimeInMillis(expected.getTimeInMillis()+1);
+        }
+        versioned.setVersion(version);
+        Object reply = scriptLibrary.call(redisClient, RedisScript.COMPARE_AND_SET, getEntityKeys(object), 
+                getWriteArgs(object, VERSION_FIELD, expected!=null?Long.toString(expected.getTimeInMillis()):""));
+        if (Long.valueOf(1).equals(reply))
+        {
+            return MergeResult.merged(object);
+        }
+        versioned.setVersion(expected);
+        if (reply==null)
+        {
+            return MergeResult.conflict(object, null);
+        }
+        if (!(reply instanceof byte[]))
+        {
+            throw new BusinessException("Reponse inattendue du script de comparaison: "+reply);
+        }
+        Calendar stored = Calendar.getInstance();
+        stored.setTimeInMillis(Long.parseLong(SafeEncoder.encode((byte[]) reply)));
+        return MergeResult.conflict(object, stored);
     }
     
     
     
-    public <T extends RedisSearchDao> void remove(Class<T> entityClass, String id) throws BusinessException
+    public <T extends RedisSearchDao> List<T> merge(List<T> objects)
     {
-        try (JedisPooled redisClient = getJedisPooled())
+        if (CollectionUtil.isEmpty(objects))
         {
-            T tmp = entityClass.getDeclaredConstructor().newInstance();
-            tmp.setOid(id);
-            redisClient.del(tmp.getKey());
+            return objects;
         }
-        catch(Exception e) 
+        BulkResult<T> result = mergeAll(objects);
+        for (T object : result.getFailed())
         {
-            ExceptionUtil.traiterException(e, "Impossible de supprimer l'objet", false);
+            LOG.fatal(result.getError(object), result.getError(object));
         }
-    }  
+        return objects;
+    }
     
     
     
-    public <T extends RedisSearchDao> T findById(Class<T> entityClass, String id) 
-        throws BusinessException
+    /**
+     * Cette methode enregistre une liste d'objets par paquets pipelinés.
+     * L'index est vérifié une seule fois par classe d'entité et les 
+     * paquets peuvent être envoyés en parallèle sur le pool.
+     * @param objects
+     * 
+     * @return le résultat objet par objet
+     */
+    public <T extends RedisSearchDao> BulkResult<T> mergeAll(List<T> objects)
     {
-        T result = null;
-        try (JedisPooled redisClient = getJedisPooled())
+        BulkResult<T> result = new BulkResult<>();
+        if (CollectionUtil.isEmpty(objects))
+        {
+            return result;
+        }
+        UnifiedJedis redisClient = getRedisClient();
+        Set<Class<?>> indexedClasses = new HashSet<>();
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>();
+        for (T object : objects)
+        {
+            if (object==null)
+            {
+                continue;
+            }
+            if (indexedClasses.add(object.getClass()))
+            {
+                try
+                {
+                    ensureIndex(redisClient, object);
+                }
+                catch (Exception e)
+                {
+                    LOG.fatal(e,e);
+                }
+            }
+            chunk.add(object);
+            if (chunk.size()>=bulkChunkSize)
+            {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty())
+        {
+            chunks.add(chunk);
+        }
+        
+        if (bulkParallelism<=1 || chunks.size()==1)
+        {
+            for (List<T> current : chunks)
+            {
+                result.addAll(mergeChunk(redisClient, current));
+            }
+        }
+        else
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(bulkParallelism, chunks.size()));
+            try
+            {
+                List<Future<BulkResult<T>>> futures = new ArrayList<>();
+                for (List<T> current : chunks)
+                {
+                    futures.add(executor.submit(() -> mergeChunk(redisClient, current)));
+                }
+                for (int ix=0; ix<futures.size(); ix++)
+                {
+                    try
+                    {
+                        result.addAll(futures.get(ix).get());
+                    }
+                    catch (ExecutionException e)
+                    {
+                        for (T object : chunks.get(ix))
+                        {
+                            result.addFailure(object, e);
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                LOG.fatal(e,e);
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode supprime une entité: le json et le hash d'index sont
+     * supprimés par un seul DEL, donc atomiquement. En mode cluster les 
+     * deux clés partagent le même slot grâce au hash tag de l'index.
+     * @param entityClass
+     * @param id
+     */
+    public <T extends RedisSearchDao> void remove(Class<T> entityClass, String id) throws BusinessException
+    {
+        try
+        {
+            UnifiedJedis redisClient = getRedisClient();
+            T tmp = entityClass.getDeclaredConstructor().newInstance();
+            tmp.setOid(id);
+            del(redisClient, tmp.getKey(), getIndexHashKey(tmp));
+        }
+        catch(Exception e) 
+        {
+            ExceptionUtil.traiterException(e, "Impossible de supprimer l'objet", false);
+        }
+    }  
+    
+    
+    
+    /**
+     * Cette methode prolonge ou supprime la durée de vie d'une entité, 
+     * json et hash d'index ensemble, par un seul appel au script TOUCH.
+     * @param entityClass
+     * @param id
+     * @param ttl nouvelle durée de vie en millisecondes, 0 ou moins pour 
+     * rendre l'entité permanente
+     * 
+     * @return true si l'entité existe
+     */
+    public <T extends RedisSearchDao> boolean touch(Class<T> entityClass, String id, long ttl) throws BusinessException
+    {
+        boolean result = false;
+        try
+        {
+            T tmp = entityClass.getDeclaredConstructor().newInstance();
+            tmp.setOid(id);
+            Object reply = scriptLibrary.call(getRedisClient(), RedisScript.TOUCH, getEntityKeys(tmp), 
+                    Arrays.asList(SafeEncoder.encode(Long.toString(ttl))));
+            result = Long.valueOf(1).equals(reply);
+        }
+        catch(Exception e) 
+        {
+            ExceptionUtil.traiterException(e, "Impossible de modifier la duree de vie de l'objet", false);
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode supprime un lot d'entités. Chaque paquet de 
+     * bulkChunkSize entités est supprimé par un seul DEL qui porte sur 
+     * les json et les hash d'index.
+     * @param entityClass
+     * @param ids
+     * 
+     * @return le nombre de clés supprimées.
+     */
+    public <T extends RedisSearchDao> long remove(Class<T> entityClass, Collection<String> ids) throws BusinessException
+    {
+        long result = 0;
+        if (CollectionUtil.isEmpty(ids))
+        {
+            return result;
+        }
+        try
+        {
+            UnifiedJedis redisClient = getRedisClient();
+            T tmp = entityClass.getDeclaredConstructor().newInstance();
+            List<String> keys = new ArrayList<>(Math.min(ids.size(), bulkChunkSize)*2);
+            for (String id : ids)
+            {
+                tmp.setOid(id);
+                keys.add(tmp.getKey());
+                keys.add(getIndexHashKey(tmp));
+                if (keys.size()>=bulkChunkSize*2)
+                {
+                    result += del(redisClient, keys.toArray(new String[0]));
+                    keys.clear();
+                }
+            }
+            if (!keys.isEmpty())
+            {
+                result += del(redisClient, keys.toArray(new String[0]));
+            }
+        }
+        catch(Exception e) 
+        {
+            ExceptionUtil.traiterException(e, "Impossible de supprimer les objets", false);
+        }
+        return result;
+    }
+    
+    
+    
+    public <T extends RedisSearchDao> T findById(Class<T> entityClass, String id) 
+        throws BusinessException
+    {
+        return findById(entityClass, id, readMode);
+    }
+    /**
+     * Cette methode charge une entité par son identifiant.
+     * @param entityClass
+     * @param id
+     * @param mode routage de la lecture, MASTER pour relire sa propre écriture
+     * 
+     * @return l'entité
+     * 
+     * @throws BusinessException si l'entité est absente
+     */
+    public <T extends RedisSearchDao> T findById(Class<T> entityClass, String id, RedisReadMode mode) 
+        throws BusinessException
+    {
+        T result = null;
+        try
         {
             T tmp = entityClass.getDeclaredConstructor().newInstance();
             tmp.setOid(id);
-            String json = redisClient.get(tmp.getKey());
-            result = JsonUtil.transformJsonToObject(json, getTypeReferenceFromClass(entityClass));
+            byte[] key = SafeEncoder.encode(tmp.getKey());
+            result = RedisPayloadCodecs.decode(read(mode, redisClient -> redisClient.get(key)), entityClass);
         }
         catch (Exception e)
         {
@@ -537,29 +1178,26 @@ public class ExtendRedisClient implements Serializable
     public <T extends RedisSearchDao> List<T> findByExpression(Class<T> entityClass, EQuery query) 
         throws BusinessException
     {
-        List<T> result = new ArrayList<>();
-        
-        try (JedisPooled redisClient = getJedisPooled())
-        {
-            SearchResult res = redisClient.ftSearch(entityClass.getName(), query);
-            if (res.getTotalResults()>0)
-            {
-                List<String> keys = new ArrayList<>();
-                for (Document doc : res.getDocuments()) 
-                {
-                    if (doc!=null && 
-                        StringUtil.isNotEmpty((String) doc.get(KEY_FIELD)) && 
-                        doc.get(TYPE_FIELD).equals(entityClass.getName()))
-                    {
-                        keys.add((String) doc.get(KEY_FIELD));
-                    }
-                }
-                if (CollectionUtil.isNotEmpty(keys))
-                {
-                    result = getTypedFromKeys(keys);
-                }
-            }
-        }
+        return findByExpression(entityClass, query, readMode);
+    }
+    /**
+     * Cette methode recherche des entités. Le FT.SEARCH et le MGET qui 
+     * le complète partent sur le même noeud.
+     * @param entityClass
+     * @param query
+     * @param mode routage de la lecture, MASTER pour relire sa propre écriture
+     * 
+     * @return les entités trouvées
+     * 
+     * @throws BusinessException si aucune entité n'est trouvée
+     */
+    public <T extends RedisSearchDao> List<T> findByExpression(Class<T> entityClass, EQuery query, 
+            RedisReadMode mode) throws BusinessException
+    {
+        List<T> result = read(mode, redisClient -> {
+            SearchResult res = search(redisClient, entityClass, query);
+            return res.getTotalResults()>0?hydrate(redisClient, entityClass, res):new ArrayList<T>();
+        });
         if (CollectionUtil.isEmpty(result))
         {
             LOG.warn(NO_ENTITY_FIND_WITH_EXPRESSION_MSG+query.toString());
@@ -570,84 +1208,959 @@ public class ExtendRedisClient implements Serializable
     
 
 
-    public JedisPooled getJedisPooled()
+    /**
+     * Cette methode parcourt les résultats d'une recherche page par page.
+     * Chaque page est lue à la demande sur un curseur FT.AGGREGATE puis 
+     * hydratée par un MGET, le résultat n'est donc ni tronqué ni chargé 
+     * entièrement en mémoire. L'expression, les paramètres, le dialecte 
+     * et le tri de la requête sont repris. La limite est ignorée sauf 
+     * pour une requête triée, qui rend les mêmes entités dans le même 
+     * ordre que findByExpression.
+     * @param entityClass
+     * @param query
+     * @param pageSize nombre d'entités chargées par page
+     * 
+     * @return un iterateur sur les entités trouvées
+     */
+    public <T extends RedisSearchDao> Iterator<T> iterateByExpression(Class<T> entityClass, EQuery query, int pageSize)
     {
-        JedisPooled jedis = null;
-        if (StringUtil.isNotEmpty(redisUri))
+        return new SearchResultIterator<>(this, entityClass, query, pageSize);
+    }
+    public <T extends RedisSearchDao> Iterator<T> iterateByExpression(Class<T> entityClass, String expression)
+    {
+        return iterateByExpression(entityClass, new EQuery(expression), EQuery.DEFAULT_LIMIT);
+    }
+    public <T extends RedisSearchDao> Stream<T> streamByExpression(Class<T> entityClass, EQuery query, int pageSize)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                iterateByExpression(entityClass, query, pageSize), Spliterator.NONNULL), false);
+    }
+    public <T extends RedisSearchDao> Stream<T> streamByExpression(Class<T> entityClass, String expression)
+    {
+        return streamByExpression(entityClass, new EQuery(expression), EQuery.DEFAULT_LIMIT);
+    }
+    
+    
+    
+    /**
+     * Cette methode exécute un FT.SEARCH. En mode INDEXED_PAYLOAD, seuls 
+     * les champs utiles à l'hydratation sont renvoyés, sauf si l'appelant
+     * a choisi ses propres champs. La requête de l'appelant n'est jamais
+     * modifiée.
+     */
+    SearchResult search(UnifiedJedis redisClient, Class<?> entityClass, EQuery query)
+    {
+        Query effective = query;
+        if (RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode) && !query.hasReturnFields())
+        {
+            effective = new ReturnFieldsQuery(query, KEY_FIELD, TYPE_FIELD, PAYLOAD_FIELD);
+        }
+        Query search = effective;
+        return onIndex(entityClass, () -> redisClient.ftSearch(entityClass.getName(), search));
+    }
+    
+    
+    
+    /**
+     * Cette methode exécute une commande sur l'index d'une entité. Si le 
+     * serveur ne connaît plus l'index, il est oublié du registre, recréé 
+     * sur le maître puis la commande est rejouée une fois.
+     */
+    <R> R onIndex(Class<?> entityClass, Supplier<R> command)
+    {
+        try
+        {
+            return command.get();
+        }
+        catch (JedisDataException jde)
         {
+            if (!RedisIndexRegistry.isUnknownIndex(jde))
+            {
+                throw jde;
+            }
+            LOG.warn("Index "+entityClass.getName()+" inconnu du serveur, recreation de l'index");
+            indexRegistry.invalidate(entityClass);
             try
             {
-                jedis = new JedisPooled(poolConfig, new URI(redisUri));
+                ensureIndex(getRedisClient(), (RedisSearchDao) entityClass.getDeclaredConstructor().newInstance());
             }
-            catch (URISyntaxException e)
+            catch (ReflectiveOperationException e)
             {
-                LOG.error(e);
+                jde.addSuppressed(e);
+                throw jde;
             }
+            return command.get();
         }
-        else
+    }
+    
+    
+    
+    /**
+     * Cette methode construit l'agrégation à curseur qui parcourt les 
+     * résultats d'une recherche page par page. Seuls les champs utiles à
+     * l'hydratation, et le champ de tri, sont chargés. Le tri de la 
+     * requête devient un SORTBY borné par MAX à offset+limite, suivi du 
+     * LIMIT de la requête: l'ordre et l'étendue sont ceux de FT.SEARCH.
+     */
+    AggregationBuilder toCursorAggregation(EQuery query, int pageSize)
+    {
+        AggregationBuilder aggregation = new AggregationBuilder(query.getQueryString());
+        List<String> fields = new ArrayList<>(Arrays.asList(KEY_FIELD, TYPE_FIELD));
+        if (RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode))
         {
-            jedis = new JedisPooled(poolConfig, host, port);
+            fields.add(PAYLOAD_FIELD);
         }
-        return jedis;
+        if (query.getSortBy()!=null && !fields.contains(query.getSortBy()))
+        {
+            fields.add(query.getSortBy());
+        }
+        aggregation.load(fields.toArray(new String[0]));
+        if (query.getSortBy()!=null)
+        {
+            String field = "@"+query.getSortBy();
+            aggregation.sortBy(query.getOffset()+query.getLimit(), 
+                    query.isSortAscending()?SortedField.asc(field):SortedField.desc(field));
+            aggregation.limit(query.getOffset(), query.getLimit());
+        }
+        if (!query.getParams().isEmpty())
+        {
+            aggregation.params(query.getParams());
+        }
+        if (query.getDialect()!=null)
+        {
+            aggregation.dialect(query.getDialect());
+        }
+        return aggregation.cursor(pageSize);
     }
     
     
     
-    private <T extends RedisSearchDao> TypeReference<T> getTypeReferenceFromClass(Class<T> classz)
+    <T extends RedisSearchDao> List<T> hydrate(UnifiedJedis redisClient, Class<T> entityClass, SearchResult res)
     {
-        return new TypeReference<T>(){
-            @Override
-            public Type getType() {
-                return classz;
+        boolean withPayload = RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode);
+        List<String> keys = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        for (Document doc : res.getDocuments()) 
+        {
+            if (doc!=null && 
+                StringUtil.isNotEmpty((String) doc.get(KEY_FIELD)) && 
+                typeRegistry.isTypeId((String) doc.get(TYPE_FIELD), entityClass))
+            {
+                keys.add((String) doc.get(KEY_FIELD));
+                payloads.add(withPayload?(String) doc.get(PAYLOAD_FIELD):null);
             }
-        };
+        }
+        return hydrate(redisClient, entityClass, keys, payloads);
     }
-
-
-
-    private <T> TypeReference<?> getTypeReferenceFromKey(String key)
+    <T extends RedisSearchDao> List<T> hydrate(UnifiedJedis redisClient, Class<T> entityClass, Collection<Row> rows)
     {
-        String cleanKey = key.substring(key.indexOf(':', key.indexOf(':')+1)+1,key.indexOf(':', key.indexOf(':', key.indexOf(':')+1)+1));
-        return new TypeReference<T>(){
-            @Override
-            public Type getType() {
-                Type type = null;
-                try
-                {
-                    type = Class.forName(cleanKey);
-                }
-                catch (ClassNotFoundException e)
-                {
-                    LOG.debug(e);
-                }
-                if (type==null)
+        boolean withPayload = RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode);
+        List<String> keys = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        for (Row row : rows) 
+        {
+            if (StringUtil.isNotEmpty(row.getString(KEY_FIELD)) && 
+                typeRegistry.isTypeId(row.getString(TYPE_FIELD), entityClass))
+            {
+                keys.add(row.getString(KEY_FIELD));
+                payloads.add(withPayload?row.getString(PAYLOAD_FIELD):null);
+            }
+        }
+        return hydrate(redisClient, entityClass, keys, payloads);
+    }
+    private <T extends RedisSearchDao> List<T> hydrate(UnifiedJedis redisClient, Class<T> entityClass, 
+            List<String> keys, List<String> payloads)
+    {
+        List<T> result = new ArrayList<>();
+        boolean withPayload = RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode);
+        if (withPayload && CollectionUtil.isNotEmpty(keys))
+        {
+            result = getTypedFromPayloads(redisClient, entityClass, keys, payloads);
+        }
+        else if (CollectionUtil.isNotEmpty(keys))
+        {
+            result = getTypedFromKeys(redisClient, keys);
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le client partagé: un pool de connexions en
+     * mode standalone, un JedisCluster en mode cluster. Il est créé au 
+     * premier appel puis réutilisé jusqu'à la fermeture du client. Il ne
+     * doit pas être fermé par l'appelant.
+     * 
+     * @return le client redis
+     */
+    public UnifiedJedis getRedisClient()
+    {
+        UnifiedJedis jedis = jedisClient;
+        if (jedis==null || isClosed(jedis))
+        {
+            poolLock.lock();
+            try
+            {
+                jedis = jedisClient;
+                if (jedis==null || isClosed(jedis))
                 {
-                    try
-                    {
-                        type = Thread.currentThread().getContextClassLoader().loadClass(cleanKey);
-                    }
-                    catch (ClassNotFoundException e)
-                    {
-                        LOG.fatal(e);
-                    }
+                    jedis = createRedisClient();
+                    jedisClient = jedis;
+                    loadScripts(jedis);
                 }
-                return type;
             }
-        };
+            finally
+            {
+                poolLock.unlock();
+            }
+        }
+        return jedis;
     }
     
     
     
-    private Map<String, String> convertObjectMapToJsonMap(Map<String, Object> indexFieldValues)
+    /**
+     * Cette methode crée un nouveau pool de connexions avec la configuration
+     * du client. Il appartient à l'appelant, qui doit le fermer. Pour des
+     * appels fréquents, préférer getSharedJedisPooled.
+     * 
+     * @return un nouveau pool de connexions
+     * @throws IllegalStateException en mode cluster
+     */
+    public JedisPooled getJedisPooled()
     {
-        Map<String, String> jsonIndexField = new HashMap<>();
-        if (indexFieldValues!=null)
+        if (isClusterMode())
+        {
+            throw new IllegalStateException("Le client est en mode cluster, utiliser getRedisClient()");
+        }
+        JedisPooled jedis = null;
+        if (StringUtil.isNotEmpty(redisUri))
         {
-            for (Entry<String, Object> entry : indexFieldValues.entrySet())
+            try
+            {
+                jedis = new JedisPooled(poolConfig, new URI(redisUri));
+            }
+            catch (URISyntaxException e)
             {
-                jsonIndexField.put(entry.getKey(), JsonUtil.transformObjectToJson(entry.getValue(), false).replace("\"", ""));
+                LOG.error(e);
             }
         }
-        return jsonIndexField;
+        else
+        {
+            jedis = new JedisPooled(poolConfig, host, port);
+        }
+        return jedis;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le pool de connexions partagé par le client.
+     * Il est fermé par close() et ne doit pas être fermé par l'appelant.
+     * 
+     * @return le pool de connexions partagé
+     * @throws IllegalStateException en mode cluster
+     */
+    public JedisPooled getSharedJedisPooled()
+    {
+        UnifiedJedis jedis = getRedisClient();
+        if (!(jedis instanceof JedisPooled))
+        {
+            throw new IllegalStateException("Le client est en mode cluster, utiliser getRedisClient()");
+        }
+        return (JedisPooled) jedis;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le client qui doit servir une lecture selon le
+     * mode de routage. Sans réplica déclaré, c'est toujours le maître.
+     * @param mode
+     * 
+     * @return le client choisi
+     */
+    UnifiedJedis getReadClient(RedisReadMode mode)
+    {
+        UnifiedJedis master = getRedisClient();
+        RedisReadRouter router = getReadRouter();
+        return router!=null?router.select(mode, master):master;
+    }
+    
+    
+    
+    /**
+     * Cette methode exécute une lecture sur le noeud choisi par le routeur.
+     * Si le réplica choisi est injoignable, il est écarté et la lecture est
+     * rejouée sur le maître.
+     */
+    <R> R read(RedisReadMode mode, Function<UnifiedJedis, R> command)
+    {
+        UnifiedJedis master = getRedisClient();
+        UnifiedJedis target = getReadClient(mode);
+        if (target==master)
+        {
+            return command.apply(master);
+        }
+        try
+        {
+            return command.apply(target);
+        }
+        catch (JedisConnectionException e)
+        {
+            LOG.warn("Lecture sur replica en echec, repli sur le maitre", e);
+            RedisReadRouter router = readRouter;
+            if (router!=null)
+            {
+                router.markDown(target);
+            }
+            return command.apply(master);
+        }
+    }
+    
+    
+    
+    private RedisReadRouter getReadRouter()
+    {
+        if (replicaNodes.isEmpty() || isClusterMode())
+        {
+            return null;
+        }
+        RedisReadRouter router = readRouter;
+        if (router==null)
+        {
+            poolLock.lock();
+            try
+            {
+                router = readRouter;
+                if (router==null)
+                {
+                    router = new RedisReadRouter(() -> jedisClient, replicaNodes, getClientConfig().build(), 
+                            poolConfig, DEFAULT_PROBE_INTERVAL);
+                    readRouter = router;
+                }
+            }
+            finally
+            {
+                poolLock.unlock();
+            }
+        }
+        return router;
+    }
+    
+    
+    
+    /**
+     * Cette methode ferme le pool de connexions partagé.
+     * Un nouvel appel au client recréera un pool.
+     */
+    @Override
+    public void close()
+    {
+        UnifiedJedis jedis;
+        RedisReadRouter router;
+        poolLock.lock();
+        try
+        {
+            jedis = jedisClient;
+            router = readRouter;
+            jedisClient = null;
+            readRouter = null;
+            nearCache = null;
+        }
+        finally
+        {
+            poolLock.unlock();
+        }
+        if (jedis!=null)
+        {
+            jedis.close();
+        }
+        if (router!=null)
+        {
+            router.close();
+        }
+    }
+    
+    
+    
+    private UnifiedJedis createRedisClient()
+    {
+        if (isClusterMode())
+        {
+            if (nearCacheSize>0 || acquisitionMaxWait>0)
+            {
+                LOG.warn("Cache local et emprunt borne ignores en mode cluster");
+            }
+            return new JedisCluster(clusterNodes, getClientConfig().build(), poolConfig);
+        }
+        return createJedisPooled();
+    }
+    
+    
+    
+    /**
+     * Cette methode charge la bibliothèque de scripts à la création du 
+     * client. Un échec n'est pas bloquant, le chargement sera retenté au
+     * premier appel d'un script.
+     */
+    private void loadScripts(UnifiedJedis jedis)
+    {
+        if (jedis==null)
+        {
+            return;
+        }
+        try
+        {
+            scriptLibrary.load(jedis);
+        }
+        catch (RuntimeException e)
+        {
+            LOG.warn("Chargement des scripts differe: "+e.getMessage());
+        }
+    }
+    
+    
+    
+    RedisScriptLibrary getScriptLibrary()
+    {
+        return scriptLibrary;
+    }
+    
+    
+    
+    private static boolean isClosed(UnifiedJedis jedis)
+    {
+        return jedis instanceof JedisPooled && ((JedisPooled) jedis).getPool().isClosed();
+    }
+    
+    
+    
+    private JedisPooled createJedisPooled()
+    {
+        JedisPooled jedis = null;
+        if (nearCacheSize>0)
+        {
+            jedis = createCachedJedisPooled();
+        }
+        else if (acquisitionMaxWait>0)
+        {
+            jedis = createBoundedJedisPooled();
+        }
+        else if (StringUtil.isNotEmpty(redisUri))
+        {
+            try
+            {
+                jedis = new JedisPooled(poolConfig, new URI(redisUri));
+            }
+            catch (URISyntaxException e)
+            {
+                LOG.error(e);
+            }
+        }
+        else
+        {
+            jedis = new JedisPooled(poolConfig, host, port);
+        }
+        return jedis;
+    }
+    
+    
+    
+    /**
+     * Cette methode crée un pool RESP3 dont les connexions partagent un
+     * cache local invalidé par le serveur (CLIENT TRACKING).
+     */
+    private JedisPooled createCachedJedisPooled()
+    {
+        HostAndPort hostAndPort = getHostAndPort();
+        if (hostAndPort==null)
+        {
+            return null;
+        }
+        DefaultJedisClientConfig.Builder clientConfig = getClientConfig().protocol(RedisProtocol.RESP3);
+        nearCache = CacheFactory.getCache(CacheConfig.builder().maxSize(nearCacheSize).build());
+        return new JedisPooled(hostAndPort, clientConfig.build(), nearCache, poolConfig);
+    }
+    
+    
+    
+    /**
+     * Cette methode crée un pool bloquant à l'épuisement: les appelants 
+     * attendent une connexion libre au plus acquisitionMaxWait, puis le 
+     * pool lève une JedisException.
+     */
+    private JedisPooled createBoundedJedisPooled()
+    {
+        HostAndPort hostAndPort = getHostAndPort();
+        if (hostAndPort==null)
+        {
+            return null;
+        }
+        GenericObjectPoolConfig<Connection> boundedConfig = poolConfig.clone();
+        boundedConfig.setBlockWhenExhausted(true);
+        boundedConfig.setMaxWait(Duration.ofMillis(acquisitionMaxWait));
+        return new JedisPooled(new PooledConnectionProvider(hostAndPort, getClientConfig().build(), boundedConfig));
+    }
+    
+    
+    
+    private HostAndPort getHostAndPort()
+    {
+        HostAndPort hostAndPort = new HostAndPort(host, port);
+        if (StringUtil.isNotEmpty(redisUri))
+        {
+            try
+            {
+                hostAndPort = JedisURIHelper.getHostAndPort(new URI(redisUri));
+            }
+            catch (URISyntaxException e)
+            {
+                LOG.error(e);
+                hostAndPort = null;
+            }
+        }
+        return hostAndPort;
+    }
+    
+    
+    
+    private DefaultJedisClientConfig.Builder getClientConfig()
+    {
+        DefaultJedisClientConfig.Builder clientConfig = DefaultJedisClientConfig.builder();
+        if (StringUtil.isNotEmpty(redisUri))
+        {
+            URI uri = URI.create(redisUri);
+            clientConfig.user(JedisURIHelper.getUser(uri))
+                .password(JedisURIHelper.getPassword(uri))
+                .database(JedisURIHelper.getDBIndex(uri))
+                .ssl(JedisURIHelper.isRedisSSLScheme(uri));
+        }
+        return clientConfig;
+    }
+    
+    
+    
+    private static boolean isGlobPattern(String pattern)
+    {
+        if (StringUtil.isEmpty(pattern))
+        {
+            return true;
+        }
+        for (int ix=0; ix<pattern.length(); ix++)
+        {
+            char c = pattern.charAt(ix);
+            if (c=='*' || c=='?' || c=='[' || c=='\\')
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    
+    /**
+     * Cette methode sérialise aussi la configuration du pool, qui n'est 
+     * pas sérialisable, afin qu'un client désérialisé garde les réglages
+     * fournis à sa construction.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeInt(poolConfig.getMaxTotal());
+        out.writeInt(poolConfig.getMaxIdle());
+        out.writeInt(poolConfig.getMinIdle());
+        out.writeBoolean(poolConfig.getBlockWhenExhausted());
+        out.writeLong(poolConfig.getMaxWaitDuration().toMillis());
+        out.writeBoolean(poolConfig.getTestOnBorrow());
+        out.writeBoolean(poolConfig.getTestOnReturn());
+        out.writeBoolean(poolConfig.getTestWhileIdle());
+        out.writeInt(poolConfig.getNumTestsPerEvictionRun());
+        out.writeLong(poolConfig.getDurationBetweenEvictionRuns().toMillis());
+        out.writeLong(poolConfig.getMinEvictableIdleDuration().toMillis());
+    }
+    
+    
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        this.poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(in.readInt());
+        poolConfig.setMaxIdle(in.readInt());
+        poolConfig.setMinIdle(in.readInt());
+        poolConfig.setBlockWhenExhausted(in.readBoolean());
+        poolConfig.setMaxWait(Duration.ofMillis(in.readLong()));
+        poolConfig.setTestOnBorrow(in.readBoolean());
+        poolConfig.setTestOnReturn(in.readBoolean());
+        poolConfig.setTestWhileIdle(in.readBoolean());
+        poolConfig.setNumTestsPerEvictionRun(in.readInt());
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(in.readLong()));
+        poolConfig.setMinEvictableIdleDuration(Duration.ofMillis(in.readLong()));
+        this.poolLock = new ReentrantLock();
+        this.indexRegistry = new RedisIndexRegistry();
+        this.typeRegistry = RedisTypeRegistry.getInstance();
+        this.scriptLibrary = new RedisScriptLibrary();
+        if (clusterNodes==null)
+        {
+            clusterNodes = new HashSet<>();
+        }
+        if (replicaNodes==null)
+        {
+            replicaNodes = new ArrayList<>();
+        }
+        if (readMode==null)
+        {
+            readMode = RedisReadMode.MASTER;
+        }
+        RedisPayloadCodecs.register(payloadCodec);
+    }
+    
+    
+    
+    private void ensureIndex(UnifiedJedis redisClient, RedisSearchDao object)
+    {
+        indexRegistry.ensureIndex(redisClient, object);
+    }
+    
+    
+    
+    private void prepareForWrite(RedisSearchDao object)
+    {
+        if (object instanceof OptimisticDao)
+        {
+            ((OptimisticDao)object).setVersion(Calendar.getInstance());
+        }
+        if (StringUtil.isEmpty(object.getOid()))
+        {
+            object.setOid(GuidGenerator.getGUID(object));
+        }
+    }
+    
+    
+    
+    private List<byte[]> getEntityKeys(RedisSearchDao object)
+    {
+        return Arrays.asList(SafeEncoder.encode(object.getKey()), SafeEncoder.encode(getIndexHashKey(object)));
+    }
+    
+    
+    
+    /**
+     * Cette methode construit les arguments des scripts d'écriture: la 
+     * durée de vie, le json, les arguments propres au script puis les
+     * couples champ valeur du hash d'index.
+     */
+    private List<byte[]> getWriteArgs(RedisSearchDao object, String... scriptArgs)
+    {
+        byte[] payload = payloadCodec.encode(object);
+        Map<String, String> fields = buildIndexFields(object, payload);
+        List<byte[]> args = new ArrayList<>(2+scriptArgs.length+fields.size()*2);
+        args.add(SafeEncoder.encode(Long.toString(Math.max(object.getTTL(), 0))));
+        args.add(payload);
+        for (String arg : scriptArgs)
+        {
+            args.add(SafeEncoder.encode(arg));
+        }
+        for (Entry<String, String> field : fields.entrySet())
+        {
+            args.add(SafeEncoder.encode(field.getKey()));
+            args.add(SafeEncoder.encode(field.getValue()));
+        }
+        return args;
+    }
+    
+    
+    
+    /**
+     * Cette methode construit les champs du hash d'index: les valeurs 
+     * indexées, la référence du json, son type, sa version et selon le 
+     * mode de stockage le json lui-même.
+     */
+    private Map<String, String> buildIndexFields(RedisSearchDao object, byte[] payload)
+    {
+        RedisIndexAccessor<RedisSearchDao> accessor = RedisIndexAccessors.forClass(object.getClass());
+        Map<String, String> jsonIndexField;
+        if (accessor!=null)
+        {
+            jsonIndexField = new HashMap<>();
+            accessor.writeIndexFields(object, jsonIndexField);
+        }
+        else
+        {
+            jsonIndexField = RedisIndexFieldEncoder.forClass(object.getClass())
+                    .encode(object.getIndexFieldValues(), 5);
+        }
+        jsonIndexField.put("oid", object.getOid());
+        jsonIndexField.put(KEY_FIELD, object.getKey());
+        jsonIndexField.put(TYPE_FIELD, typeRegistry.getTypeId(object.getClass()));
+        if (RedisStorageMode.INDEXED_PAYLOAD.equals(storageMode))
+        {
+            byte[] json = RedisPayloadCodecs.isMarked(payload)?JsonPayloadCodec.INSTANCE.encode(object):payload;
+            jsonIndexField.put(PAYLOAD_FIELD, new String(json, StandardCharsets.UTF_8));
+        }
+        if (object instanceof OptimisticDao && ((OptimisticDao) object).getVersion()!=null)
+        {
+            jsonIndexField.put(VERSION_FIELD, Long.toString(((OptimisticDao) object).getVersion().getTimeInMillis()));
+        }
+        return jsonIndexField;
+    }
+    
+    
+    
+    private <T extends RedisSearchDao> BulkResult<T> mergeChunk(UnifiedJedis redisClient, List<T> chunk)
+    {
+        return mergeChunk(redisClient, chunk, true);
+    }
+    /**
+     * Cette methode envoie un appel au script MERGE par entité dans un 
+     * pipeline. Les entités refusées par NOSCRIPT sont rejouées une fois
+     * après rechargement des scripts.
+     */
+    private <T extends RedisSearchDao> BulkResult<T> mergeChunk(UnifiedJedis redisClient, List<T> chunk, 
+            boolean retryOnNoScript)
+    {
+        BulkResult<T> result = new BulkResult<>();
+        try
+        {
+            scriptLibrary.ensureLoaded(redisClient);
+        }
+        catch (Exception e)
+        {
+            for (T object : chunk)
+            {
+                result.addFailure(object, e);
+            }
+            return result;
+        }
+        List<T> queued = new ArrayList<>(chunk.size());
+        List<Response<Object>> responses = new ArrayList<>(chunk.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined())
+        {
+            for (T object : chunk)
+            {
+                try
+                {
+                    prepareForWrite(object);
+                    responses.add(scriptLibrary.queue(pipeline, RedisScript.MERGE, getEntityKeys(object), 
+                            getWriteArgs(object)));
+                    queued.add(object);
+                }
+                catch (Exception e)
+                {
+                    result.addFailure(object, e);
+                }
+            }
+            pipeline.sync();
+        }
+        catch (Exception e)
+        {
+            for (T object : queued)
+            {
+                result.addFailure(object, e);
+            }
+            return result;
+        }
+        List<T> noScript = new ArrayList<>();
+        for (int ix=0; ix<queued.size(); ix++)
+        {
+            try
+            {
+                responses.get(ix).get();
+                result.addSuccess(queued.get(ix));
+            }
+            catch (JedisNoScriptException e)
+            {
+                if (retryOnNoScript)
+                {
+                    noScript.add(queued.get(ix));
+                }
+                else
+                {
+                    result.addFailure(queued.get(ix), e);
+                }
+            }
+            catch (Exception e)
+            {
+                result.addFailure(queued.get(ix), e);
+            }
+        }
+        if (!noScript.isEmpty())
+        {
+            scriptLibrary.invalidate();
+            result.addAll(mergeChunk(redisClient, noScript, false));
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie la clé du hash d'index d'une entité. En mode 
+     * cluster elle porte le hash tag de la clé du json afin que les deux
+     * clés soient sur le même slot.
+     */
+    String getIndexHashKey(RedisSearchDao object)
+    {
+        String prefix = object.getClass().getName()+":";
+        return isClusterMode()?prefix+"{"+JedisClusterHashTag.getHashTag(object.getKey())+"}":
+            prefix+object.getOid();
+    }
+    
+    
+    
+    private static List<String> mget(UnifiedJedis redisClient, String... keys)
+    {
+        if (!(redisClient instanceof JedisCluster))
+        {
+            return redisClient.mget(keys);
+        }
+        List<byte[]> values = mget(redisClient, Arrays.asList(keys));
+        List<String> result = new ArrayList<>(values.size());
+        for (byte[] value : values)
+        {
+            result.add(value!=null?SafeEncoder.encode(value):null);
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode lit les valeurs binaires de clés par MGET. En mode 
+     * cluster les clés sont regroupées par slot: chaque groupe devient un
+     * MGET du pipeline de cluster, qui envoie en parallèle un lot par 
+     * maître. L'ordre des valeurs suit celui des clés.
+     */
+    private static List<byte[]> mget(UnifiedJedis redisClient, List<String> keys)
+    {
+        if (!(redisClient instanceof JedisCluster))
+        {
+            return redisClient.mget(SafeEncoder.encodeMany(keys.toArray(new String[0])));
+        }
+        Collection<List<Integer>> groups = groupBySlot(keys);
+        List<Response<List<byte[]>>> responses = new ArrayList<>(groups.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined())
+        {
+            for (List<Integer> group : groups)
+            {
+                byte[][] slotKeys = new byte[group.size()][];
+                for (int ix=0; ix<slotKeys.length; ix++)
+                {
+                    slotKeys[ix] = SafeEncoder.encode(keys.get(group.get(ix)));
+                }
+                responses.add(pipeline.mget(slotKeys));
+            }
+            pipeline.sync();
+        }
+        List<byte[]> result = new ArrayList<>(Collections.nCopies(keys.size(), (byte[]) null));
+        Iterator<Response<List<byte[]>>> response = responses.iterator();
+        for (List<Integer> group : groups)
+        {
+            List<byte[]> values = response.next().get();
+            for (int ix=0; ix<group.size(); ix++)
+            {
+                result.set(group.get(ix), values.get(ix));
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode supprime des clés. En mode cluster un DEL est émis par
+     * slot dans le pipeline de cluster.
+     * 
+     * @return le nombre de clés supprimées.
+     */
+    private static long del(UnifiedJedis redisClient, String... keys)
+    {
+        if (!(redisClient instanceof JedisCluster))
+        {
+            return redisClient.del(keys);
+        }
+        List<String> keyList = Arrays.asList(keys);
+        List<Response<Long>> responses = new ArrayList<>();
+        try (AbstractPipeline pipeline = redisClient.pipelined())
+        {
+            for (List<Integer> group : groupBySlot(keyList))
+            {
+                String[] slotKeys = new String[group.size()];
+                for (int ix=0; ix<slotKeys.length; ix++)
+                {
+                    slotKeys[ix] = keyList.get(group.get(ix));
+                }
+                responses.add(pipeline.del(slotKeys));
+            }
+            pipeline.sync();
+        }
+        long result = 0;
+        for (Response<Long> response : responses)
+        {
+            result += response.get();
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode regroupe les positions des clés par slot de hachage.
+     */
+    private static Collection<List<Integer>> groupBySlot(List<String> keys)
+    {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int ix=0; ix<keys.size(); ix++)
+        {
+            groups.computeIfAbsent(JedisClusterCRC16.getSlot(keys.get(ix)), k -> new ArrayList<>()).add(ix);
+        }
+        return groups.values();
+    }
+    
+    
+    
+    /**
+     * Cette methode convertit les json remontés par la recherche. Les 
+     * documents indexés sans json sont complétés par un MGET.
+     */
+    private <T extends RedisSearchDao> List<T> getTypedFromPayloads(UnifiedJedis redisClient, Class<T> entityClass,
+            List<String> keys, List<String> payloads)
+    {
+        List<String> missingKeys = new ArrayList<>();
+        for (int ix=0; ix<keys.size(); ix++)
+        {
+            if (StringUtil.isEmpty(payloads.get(ix)))
+            {
+                missingKeys.add(keys.get(ix));
+            }
+        }
+        Iterator<byte[]> missingValues = null;
+        if (!missingKeys.isEmpty())
+        {
+            missingValues = mget(redisClient, missingKeys).iterator();
+        }
+        List<T> result = new ArrayList<>(payloads.size());
+        for (String payload : payloads)
+        {
+            T entity = StringUtil.isNotEmpty(payload)?
+                    JsonPayloadCodec.INSTANCE.decode(payload, entityClass):
+                    RedisPayloadCodecs.decode(missingValues.next(), entityClass);
+            if (entity!=null)
+            {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    private static String extractClassName(String key)
+    {
+        int start = key.indexOf(':', key.indexOf(':')+1)+1;
+        return key.substring(start, key.indexOf(':', start));
     }
 }
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.lixbox.orm.redis.model.RedisIndexSchema;
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.search.IndexDefinition;
+import redis.clients.jedis.search.IndexOptions;
+import redis.clients.jedis.search.Schema;
+import redis.clients.jedis.search.Schema.Field;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Ce registre mémorise les index RediSearch connus du client, par classe
+ * d'entité et empreinte de schéma. Le serveur n'est interrogé qu'à la
+ * première utilisation, lorsque le schéma a changé ou lorsqu'une recherche
+ * signale que l'index n'existe plus (index temporaire expiré, FLUSHDB, 
+ * suppression par un autre noeud). La vérification, la recréation et 
+ * l'écriture de l'empreinte se font sous un verrou posé sur le serveur,
+ * pour que deux clients ne s'intercalent pas entre ces étapes.
+ *
+ * @author ludovic.terral
+ */
+public class RedisIndexRegistry
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisIndexRegistry.class);
+    static final String FINGERPRINT_KEY_PREFIX = "LIXBOX:INDEX:";
+    private static final String SORTABLE_FLAG = "SORTABLE";
+    private static final String LOCK_SUFFIX = ":LOCK";
+    private static final long LOCK_TIMEOUT = 30000;
+    private static final long LOCK_RETRY_DELAY = 50;
+    private static final String RELEASE_LOCK_SCRIPT = 
+        "if redis.call('GET', KEYS[1])==ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0";
+
+    private final Map<Class<?>, String> knownIndexes = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+
+
+    //----------- Methodes -----------
+    /**
+     * Cette methode garantit l'existence de l'index de l'entité avec le
+     * schéma courant. L'index est créé s'il est absent et recréé si son
+     * empreinte a changé. Un index existant sans empreinte enregistrée est
+     * adopté si ses attributs (FT.INFO) correspondent au schéma.
+     *
+     * @param redisClient
+     * @param object une instance de l'entité
+     */
+    public void ensureIndex(UnifiedJedis redisClient, RedisSearchDao object)
+    {
+        Class<?> entityClass = object.getClass();
+        RedisIndexSchema schema = RedisIndexSchema.of(object);
+        String fingerprint = schema.getFingerprint();
+        if (fingerprint.equals(knownIndexes.get(entityClass)))
+        {
+            return;
+        }
+        lock.lock();
+        try
+        {
+            if (fingerprint.equals(knownIndexes.get(entityClass)))
+            {
+                return;
+            }
+            String indexName = entityClass.getName();
+            String fingerprintKey = FINGERPRINT_KEY_PREFIX+indexName;
+            String lockKey = fingerprintKey+LOCK_SUFFIX;
+            String token = acquireServerLock(redisClient, lockKey);
+            try
+            {
+                Map<String, Object> info = getIndexInfo(redisClient, indexName);
+                if (info!=null)
+                {
+                    String storedFingerprint = redisClient.get(fingerprintKey);
+                    boolean matches = storedFingerprint!=null?fingerprint.equals(storedFingerprint):
+                        getIndexedFields(schema.getFields()).equals(getIndexedFields(info));
+                    if (!matches)
+                    {
+                        LOG.info("Le schema de l'index "+indexName+" a change, recreation de l'index");
+                        redisClient.ftDropIndex(indexName);
+                        info = null;
+                    }
+                    else if (storedFingerprint==null)
+                    {
+                        LOG.info("Adoption de l'index existant "+indexName);
+                    }
+                }
+                if (info==null)
+                {
+                    createIndex(redisClient, indexName, schema.toSchema(), schema.getTTL());
+                }
+                redisClient.set(fingerprintKey, fingerprint);
+            }
+            finally
+            {
+                redisClient.eval(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), 
+                        Collections.singletonList(token));
+            }
+            knownIndexes.put(entityClass, fingerprint);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+
+    /**
+     * Cette methode oublie l'index d'une entité, qui sera recalculé et
+     * revérifié auprès du serveur à la prochaine écriture.
+     *
+     * @param entityClass
+     */
+    public void invalidate(Class<?> entityClass)
+    {
+        knownIndexes.remove(entityClass);
+        RedisIndexSchema.invalidate(entityClass);
+    }
+    public void invalidateAll()
+    {
+        knownIndexes.clear();
+    }
+
+
+
+    public boolean isKnown(Class<?> entityClass)
+    {
+        return knownIndexes.containsKey(entityClass);
+    }
+
+
+
+    /**
+     * Cette methode indique si une erreur du serveur signale un index 
+     * inconnu, "Unknown index name" ou "no such index" selon la version
+     * de RediSearch.
+     *
+     * @param jde
+     */
+    public static boolean isUnknownIndex(JedisDataException jde)
+    {
+        String message = jde.getMessage()!=null?jde.getMessage().toLowerCase(Locale.ROOT):"";
+        return message.contains("unknown index") || message.contains("no such index");
+    }
+
+
+
+    /**
+     * Cette methode pose le verrou serveur de l'index, en attendant au 
+     * plus LOCK_TIMEOUT qu'un autre client le libère. Le verrou expire 
+     * seul si son détenteur disparaît.
+     *
+     * @return le jeton qui permet de libérer le verrou
+     */
+    private String acquireServerLock(UnifiedJedis redisClient, String lockKey)
+    {
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis()+LOCK_TIMEOUT;
+        while (redisClient.set(lockKey, token, SetParams.setParams().nx().px(LOCK_TIMEOUT))==null)
+        {
+            if (System.currentTimeMillis()>deadline)
+            {
+                throw new JedisException("Verrou de l'index non obtenu: "+lockKey);
+            }
+            try
+            {
+                Thread.sleep(LOCK_RETRY_DELAY);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new JedisException("Attente du verrou de l'index interrompue: "+lockKey, e);
+            }
+        }
+        return token;
+    }
+
+
+
+    private Map<String, Object> getIndexInfo(UnifiedJedis redisClient, String indexName)
+    {
+        Map<String, Object> result;
+        try
+        {
+            result = redisClient.ftInfo(indexName);
+        }
+        catch (JedisDataException jde)
+        {
+            result = null;
+        }
+        return result;
+    }
+
+
+
+    private static Map<String, String> getIndexedFields(List<Field> fields)
+    {
+        Map<String, String> result = new HashMap<>();
+        for (Field field : fields)
+        {
+            result.put(field.getName().getName(), field.getType().name()+(field.isSortable()?":"+SORTABLE_FLAG:""));
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Cette methode lit les attributs d'un index dans la réponse de 
+     * FT.INFO: des listes clé valeur en RESP2, des maps en RESP3.
+     */
+    private static Map<String, String> getIndexedFields(Map<String, Object> info)
+    {
+        Map<String, String> result = new HashMap<>();
+        Object attributes = info.get("attributes");
+        if (!(attributes instanceof List))
+        {
+            return result;
+        }
+        for (Object attribute : (List<?>) attributes)
+        {
+            String identifier = null;
+            String type = null;
+            boolean sortable = false;
+            if (attribute instanceof Map)
+            {
+                Map<?, ?> values = (Map<?, ?>) attribute;
+                identifier = asString(values.get("identifier"));
+                type = asString(values.get("type"));
+                Object flags = values.get("flags");
+                if (flags instanceof List)
+                {
+                    for (Object flag : (List<?>) flags)
+                    {
+                        sortable |= SORTABLE_FLAG.equals(asString(flag));
+                    }
+                }
+            }
+            else if (attribute instanceof List)
+            {
+                List<?> values = (List<?>) attribute;
+                for (int ix=0; ix<values.size(); ix++)
+                {
+                    String value = asString(values.get(ix));
+                    if ("identifier".equals(value) && ix+1<values.size())
+                    {
+                        identifier = asString(values.get(++ix));
+                    }
+                    else if ("type".equals(value) && ix+1<values.size())
+                    {
+                        type = asString(values.get(++ix));
+                    }
+                    else
+                    {
+                        sortable |= SORTABLE_FLAG.equals(value);
+                    }
+                }
+            }
+            if (identifier!=null)
+            {
+                result.put(identifier, type+(sortable?":"+SORTABLE_FLAG:""));
+            }
+        }
+        return result;
+    }
+
+
+
+    private static String asString(Object value)
+    {
+        return value instanceof byte[]?SafeEncoder.encode((byte[]) value):value!=null?value.toString():null;
+    }
+
+
+
+    private void createIndex(UnifiedJedis redisClient, String indexName, Schema schema, long ttl)
+    {
+        IndexOptions options = IndexOptions.defaultOptions();
+        if (ttl>0)
+        {
+            options.setTemporary(ttl/1000);
+        }
+        IndexDefinition rule = new IndexDefinition().setPrefixes(indexName+":");
+        options.setDefinition(rule);
+        redisClient.ftCreate(indexName, options, schema);
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Ce balayeur supprime les hash d'index d'une entité dont le json
+ * n'existe plus.
+ * 
+ * Chaque passage traite une page de SCAN et supprime au plus 
+ * maxDeletesPerRun hash. La suppression est conditionnelle et atomique 
+ * côté serveur, une entité réécrite entre la détection et la suppression 
+ * est donc conservée.
+ * 
+ * @author ludovic.terral
+ */
+public class RedisOrphanSweeper implements Closeable
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisOrphanSweeper.class);
+    
+    private final ExtendRedisClient client;
+    private final Class<? extends RedisSearchDao> entityClass;
+    private final int maxDeletesPerRun;
+    private ScanKeyIterator scan;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    private long deleted;
+    
+    
+    
+    //----------- Methodes -----------
+    /**
+     * @param client
+     * @param entityClass
+     * @param maxDeletesPerRun nombre maximal de hash supprimés par passage
+     */
+    public RedisOrphanSweeper(ExtendRedisClient client, Class<? extends RedisSearchDao> entityClass, 
+            int maxDeletesPerRun)
+    {
+        this.client = client;
+        this.entityClass = entityClass;
+        this.maxDeletesPerRun = maxDeletesPerRun;
+    }
+    
+    
+    
+    /**
+     * Cette methode lance le balayage en tâche de fond, un passage par
+     * période. La limite de débit est donc maxDeletesPerRun par période.
+     * @param period
+     * @param unit
+     */
+    public synchronized void start(long period, TimeUnit unit)
+    {
+        if (task==null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "redis-orphan-sweeper-"+entityClass.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            task = scheduler.scheduleWithFixedDelay(this::safeSweep, period, period, unit);
+        }
+    }
+    
+    
+    
+    @Override
+    public synchronized void close()
+    {
+        if (task!=null)
+        {
+            task.cancel(false);
+            scheduler.shutdown();
+            task = null;
+            scheduler = null;
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode traite la page suivante du SCAN. Le parcours reprend 
+     * au début une fois le keyspace entièrement balayé.
+     * 
+     * @return le nombre de hash orphelins supprimés.
+     */
+    public synchronized int sweep()
+    {
+        UnifiedJedis redisClient = client.getRedisClient();
+        if (scan==null)
+        {
+            scan = new ScanKeyIterator(redisClient, entityClass.getName()+":*", client.getScanCount());
+        }
+        List<String> indexKeys = scan.nextPage();
+        if (indexKeys==null)
+        {
+            scan = null;
+            return 0;
+        }
+        List<String[]> candidates = findCandidates(redisClient, indexKeys);
+        int result = 0;
+        if (!candidates.isEmpty())
+        {
+            RedisScriptLibrary library = client.getScriptLibrary();
+            library.ensureLoaded(redisClient);
+            List<Response<Object>> responses = new ArrayList<>(candidates.size());
+            try (AbstractPipeline pipeline = redisClient.pipelined())
+            {
+                for (String[] candidate : candidates)
+                {
+                    responses.add(library.queue(pipeline, RedisScript.DELETE_IF_ORPHAN, 
+                            Arrays.asList(SafeEncoder.encodeMany(candidate)), Collections.emptyList()));
+                }
+                pipeline.sync();
+            }
+            try
+            {
+                for (Response<Object> response : responses)
+                {
+                    if (Long.valueOf(1).equals(response.get()))
+                    {
+                        result++;
+                    }
+                }
+            }
+            catch (JedisNoScriptException e)
+            {
+                library.invalidate();
+                LOG.info("Scripts absents du serveur, les orphelins seront traites au prochain parcours");
+            }
+        }
+        deleted += result;
+        return result;
+    }
+    
+    
+    
+    public synchronized long getDeletedCount()
+    {
+        return deleted;
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie, dans la limite du nombre de suppressions par
+     * passage, les couples (hash d'index, json) dont le json est absent.
+     */
+    private List<String[]> findCandidates(UnifiedJedis redisClient, List<String> indexKeys)
+    {
+        List<Response<String>> payloadKeys = new ArrayList<>(indexKeys.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined())
+        {
+            for (String indexKey : indexKeys)
+            {
+                payloadKeys.add(pipeline.hget(indexKey, ExtendRedisClient.KEY_FIELD));
+            }
+            pipeline.sync();
+        }
+        List<String[]> pairs = new ArrayList<>(indexKeys.size());
+        for (int ix=0; ix<indexKeys.size(); ix++)
+        {
+            String payloadKey = payloadKeys.get(ix).get();
+            if (payloadKey!=null)
+            {
+                pairs.add(new String[] {indexKeys.get(ix), payloadKey});
+            }
+        }
+        if (pairs.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        List<Response<Boolean>> exists = new ArrayList<>(pairs.size());
+        try (AbstractPipeline pipeline = redisClient.pipelined())
+        {
+            for (String[] pair : pairs)
+            {
+                exists.add(pipeline.exists(pair[1]));
+            }
+            pipeline.sync();
+        }
+        List<String[]> result = new ArrayList<>();
+        for (int ix=0; ix<pairs.size() && result.size()<maxDeletesPerRun; ix++)
+        {
+            if (!exists.get(ix).get())
+            {
+                result.add(pairs.get(ix));
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    private void safeSweep()
+    {
+        try
+        {
+            int count = sweep();
+            if (count>0)
+            {
+                LOG.info(count+" hash d'index orphelins supprimes pour "+entityClass.getName());
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.error("Echec du balayage des index orphelins de "+entityClass.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+/**
+ * Cette enumeration liste les modes de routage des lectures.
+ *
+ * @author ludovic.terral
+ */
+public enum RedisReadMode
+{
+    /** les lectures partent sur le maître, elles voient toujours les dernières écritures */
+    MASTER,
+
+    /** les lectures sont réparties sur les réplicas disponibles, le maître sert de repli */
+    REPLICA_PREFERRED,
+
+    /** les lectures partent sur le noeud de plus faible latence mesurée, maître compris */
+    NEAREST;
+}
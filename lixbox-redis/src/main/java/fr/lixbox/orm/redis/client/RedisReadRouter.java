@@ -0,0 +1,265 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
+
+/**
+ * Ce routeur choisit le noeud qui sert une lecture parmi le maître et
+ * ses réplicas.
+ * 
+ * La latence de chaque noeud est mesurée par PING sur un thread dédié, 
+ * une fois par intervalle de sonde, puis lissée. Le choix d'un noeud ne
+ * fait donc jamais d'appel réseau. Un réplica en échec est écarté 
+ * jusqu'à la sonde suivante.
+ * 
+ * @author ludovic.terral
+ */
+public class RedisReadRouter implements Closeable
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisReadRouter.class);
+    
+    private final List<ReplicaNode> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final ReentrantLock probeLock = new ReentrantLock();
+    private final Supplier<UnifiedJedis> master;
+    private final ScheduledExecutorService scheduler;
+    private volatile long masterLatency;
+    
+    
+    
+    //----------- Methodes -----------
+    /**
+     * @param master fournit le client courant du maître, null s'il est fermé
+     * @param replicaNodes
+     * @param clientConfig
+     * @param poolConfig configuration du pool de chaque réplica
+     * @param probeInterval intervalle entre deux mesures, en ms
+     */
+    public RedisReadRouter(Supplier<UnifiedJedis> master, Collection<HostAndPort> replicaNodes, 
+            JedisClientConfig clientConfig, GenericObjectPoolConfig<Connection> poolConfig, long probeInterval)
+    {
+        this.master = master;
+        for (HostAndPort node : replicaNodes)
+        {
+            replicas.add(new ReplicaNode(node, new JedisPooled(node, clientConfig, poolConfig)));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-read-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::safeProbe, 0, probeInterval, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le client qui doit servir une lecture d'après
+     * les dernières mesures, sans appel réseau. Avant la première sonde, 
+     * le mode NEAREST choisit le maître.
+     * @param mode
+     * @param master le client du maître
+     * 
+     * @return le client choisi, le maître si aucun réplica n'est disponible.
+     */
+    public UnifiedJedis select(RedisReadMode mode, UnifiedJedis master)
+    {
+        if (RedisReadMode.MASTER.equals(mode) || replicas.isEmpty())
+        {
+            return master;
+        }
+        UnifiedJedis result = master;
+        if (RedisReadMode.NEAREST.equals(mode))
+        {
+            long best = masterLatency;
+            for (ReplicaNode replica : replicas)
+            {
+                if (replica.up && replica.latency<best)
+                {
+                    best = replica.latency;
+                    result = replica.client;
+                }
+            }
+        }
+        else
+        {
+            int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int ix=0; ix<replicas.size(); ix++)
+            {
+                ReplicaNode replica = replicas.get((start+ix)%replicas.size());
+                if (replica.up)
+                {
+                    result = replica.client;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode écarte un réplica jusqu'à la prochaine sonde.
+     * @param client
+     */
+    public void markDown(UnifiedJedis client)
+    {
+        for (ReplicaNode replica : replicas)
+        {
+            if (replica.client==client)
+            {
+                replica.up = false;
+                LOG.warn("Replica "+replica.node+" ecarte jusqu'a la prochaine sonde");
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode mesure la latence du maître et des réplicas. Elle est
+     * appelée périodiquement par le thread de sonde. Un seul appelant 
+     * mesure à la fois, les autres gardent les dernières valeurs.
+     */
+    public void probe()
+    {
+        if (!probeLock.tryLock())
+        {
+            return;
+        }
+        try
+        {
+            UnifiedJedis masterClient = master.get();
+            if (masterClient!=null)
+            {
+                masterLatency = smooth(masterLatency, ping(masterClient));
+            }
+            for (ReplicaNode replica : replicas)
+            {
+                long sample = ping(replica.client);
+                replica.up = sample<Long.MAX_VALUE;
+                replica.latency = replica.up?smooth(replica.latency, sample):Long.MAX_VALUE;
+            }
+        }
+        finally
+        {
+            probeLock.unlock();
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode arrête la sonde et ferme les pools des réplicas.
+     */
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+        for (ReplicaNode replica : replicas)
+        {
+            replica.client.close();
+        }
+    }
+    
+    
+    
+    private void safeProbe()
+    {
+        try
+        {
+            probe();
+        }
+        catch (RuntimeException e)
+        {
+            LOG.error("Echec de la sonde des noeuds de lecture", e);
+        }
+    }
+    
+    
+    
+    private static long ping(UnifiedJedis client)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            client.ping();
+            return System.nanoTime()-start;
+        }
+        catch (RuntimeException e)
+        {
+            LOG.debug(e);
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    
+    
+    private static long smooth(long previous, long sample)
+    {
+        if (previous<=0 || previous==Long.MAX_VALUE || sample==Long.MAX_VALUE)
+        {
+            return sample;
+        }
+        return (previous*7+sample)/8;
+    }
+    
+    
+    
+    private static final class ReplicaNode
+    {
+        private final HostAndPort node;
+        private final JedisPooled client;
+        private volatile boolean up = true;
+        private volatile long latency;
+
+        private ReplicaNode(HostAndPort node, JedisPooled client)
+        {
+            this.node = node;
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * Cette enumeration liste les scripts Lua des opérations d'entité. 
+ * 
+ * KEYS[1] est toujours la clé du json et KEYS[2] celle du hash d'index,
+ * les deux clés sont donc sur le même slot en mode cluster. Les scripts 
+ * d'écriture remplacent le hash d'index en entier: un champ qui n'est plus
+ * écrit (valeur nulle, json retiré en changeant de mode de stockage) n'y 
+ * reste pas. Le SHA1 est calculé localement, il est identique à celui 
+ * renvoyé par SCRIPT LOAD.
+ *
+ * @author ludovic.terral
+ */
+public enum RedisScript
+{
+    /** ARGV: ttl, json, puis les couples champ valeur du hash d'index */
+    MERGE(
+        "local ttl = tonumber(ARGV[1]) "+
+        "if ttl>0 then redis.call('SET', KEYS[1], ARGV[2], 'PX', ttl) "+
+        "else redis.call('SET', KEYS[1], ARGV[2]) end "+
+        "redis.call('DEL', KEYS[2]) redis.call('HSET', KEYS[2], unpack(ARGV, 3)) "+
+        "if ttl>0 then redis.call('PEXPIRE', KEYS[2], ttl) end "+
+        "return 1"),
+
+    /** 
+     * ARGV: ttl, json, champ de version, version attendue, puis les couples
+     * champ valeur. Renvoie la version stockée en cas de conflit, nil si 
+     * une version était attendue mais que l'entité n'existe plus. Un hash
+     * sans version, écrit avant le versionnement de l'index, est accepté
+     * tant que le json existe: l'écriture y ajoute alors la version.
+     */
+    COMPARE_AND_SET(
+        "local current = redis.call('HGET', KEYS[2], ARGV[3]) "+
+        "if current then if current~=ARGV[4] then return current end "+
+        "elseif ARGV[4]~='' and ARGV[4]~='0' and redis.call('EXISTS', KEYS[1])==0 then return false end "+
+        "local ttl = tonumber(ARGV[1]) "+
+        "if ttl>0 then redis.call('SET', KEYS[1], ARGV[2], 'PX', ttl) "+
+        "else redis.call('SET', KEYS[1], ARGV[2]) end "+
+        "redis.call('DEL', KEYS[2]) redis.call('HSET', KEYS[2], unpack(ARGV, 5)) "+
+        "if ttl>0 then redis.call('PEXPIRE', KEYS[2], ttl) end "+
+        "return 1"),
+
+    /** ARGV: ttl, 0 ou moins pour rendre l'entité permanente */
+    TOUCH(
+        "if redis.call('EXISTS', KEYS[1])==0 then return 0 end "+
+        "if tonumber(ARGV[1])>0 then "+
+        "redis.call('PEXPIRE', KEYS[1], ARGV[1]) redis.call('PEXPIRE', KEYS[2], ARGV[1]) "+
+        "else redis.call('PERSIST', KEYS[1]) redis.call('PERSIST', KEYS[2]) end "+
+        "return 1"),
+
+    /** KEYS inversées: le hash d'index est supprimé si le json n'existe plus */
+    DELETE_IF_ORPHAN(
+        "if redis.call('EXISTS', KEYS[2])==0 then return redis.call('DEL', KEYS[1]) end return 0");
+
+
+
+    // ----------- Attibuts -----------
+    private final String source;
+    private final byte[] sha;
+
+
+
+    //----------- Methodes -----------
+    RedisScript(String source)
+    {
+        this.source = source;
+        this.sha = SafeEncoder.encode(sha1(source));
+    }
+
+
+
+    public String getSource()
+    {
+        return source;
+    }
+    public byte[] getSha()
+    {
+        return sha.clone();
+    }
+
+
+
+    private static String sha1(String source)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b>>4)&0xF, 16)).append(Character.forDigit(b&0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * Cette bibliothèque charge les scripts des opérations d'entité dans le
+ * cache de scripts du serveur puis les appelle par EVALSHA. Chaque 
+ * opération coûte donc un seul appel, atomique sans MULTI/EXEC.
+ * 
+ * Si le serveur a perdu ses scripts (redémarrage, SCRIPT FLUSH, 
+ * bascule), le NOSCRIPT provoque un rechargement et l'appel est rejoué.
+ *
+ * @author ludovic.terral
+ */
+public class RedisScriptLibrary
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisScriptLibrary.class);
+
+    private volatile UnifiedJedis loadedOn;
+
+
+
+    //----------- Methodes -----------
+    /**
+     * Cette methode charge tous les scripts sur le serveur, sur chaque
+     * maître en mode cluster.
+     * @param redisClient
+     */
+    public void load(UnifiedJedis redisClient)
+    {
+        for (RedisScript script : RedisScript.values())
+        {
+            redisClient.scriptLoad(script.getSource());
+        }
+        loadedOn = redisClient;
+    }
+
+
+
+    /**
+     * Cette methode oublie le chargement: le prochain appel rechargera 
+     * les scripts.
+     */
+    public void invalidate()
+    {
+        loadedOn = null;
+    }
+
+
+
+    public void ensureLoaded(UnifiedJedis redisClient)
+    {
+        if (loadedOn!=redisClient)
+        {
+            load(redisClient);
+        }
+    }
+
+
+
+    /**
+     * Cette methode exécute un script par son SHA1.
+     * @param redisClient
+     * @param script
+     * @param keys
+     * @param args
+     * 
+     * @return la réponse du script
+     */
+    public Object call(UnifiedJedis redisClient, RedisScript script, List<byte[]> keys, List<byte[]> args)
+    {
+        ensureLoaded(redisClient);
+        try
+        {
+            return redisClient.evalsha(script.getSha(), keys, args);
+        }
+        catch (JedisNoScriptException e)
+        {
+            LOG.info("Scripts absents du serveur, rechargement de la bibliotheque");
+            load(redisClient);
+            return redisClient.evalsha(script.getSha(), keys, args);
+        }
+    }
+
+
+
+    /**
+     * Cette methode empile l'appel d'un script dans un pipeline. Les 
+     * scripts doivent avoir été chargés par ensureLoaded, un NOSCRIPT 
+     * remonte par la réponse et l'appelant doit alors invalider la 
+     * bibliothèque.
+     */
+    public Response<Object> queue(PipeliningBase pipeline, RedisScript script, List<byte[]> keys, List<byte[]> args)
+    {
+        return pipeline.evalsha(script.getSha(), keys, args);
+    }
+}
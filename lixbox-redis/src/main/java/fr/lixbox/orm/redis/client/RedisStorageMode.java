@@ -0,0 +1,43 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+/**
+ * Cette enumeration liste les modes de stockage des entités indexées.
+ *
+ * @author ludovic.terral
+ */
+public enum RedisStorageMode
+{
+    /** le hash d'index référence la clé du json, une recherche coûte FT.SEARCH puis MGET */
+    KEY_REFERENCE,
+
+    /**
+     * le hash d'index embarque aussi le json, une recherche coûte un seul FT.SEARCH.
+     * Le json est alors stocké deux fois (clé de payload et champ payload_object du hash),
+     * ce qui double à peu près l'empreinte mémoire par entité. Avec un codec compressant,
+     * la copie du hash reste du json en clair car RediSearch retourne les champs en texte.
+     */
+    INDEXED_PAYLOAD;
+}
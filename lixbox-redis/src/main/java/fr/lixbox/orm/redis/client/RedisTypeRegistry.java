@@ -0,0 +1,283 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Ce registre résout les identifiants de type portés par les clés redis.
+ *
+ * Un identifiant est soit un alias court déclaré par registerAlias, soit
+ * le nom qualifié de la classe. Les résolutions, y compris les échecs,
+ * sont mises en cache par classloader dans une limite de taille. Le cache
+ * ne référence les classes que faiblement: un classloader abandonné, et 
+ * ses classes, restent donc collectables. Les lectures ne prennent aucun
+ * verrou: seul le changement de classloader passe par la table des 
+ * classloaders, sous un ReentrantLock qui n'épingle pas les threads 
+ * virtuels.
+ *
+ * @author ludovic.terral
+ */
+public class RedisTypeRegistry
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisTypeRegistry.class);
+    private static final RedisTypeRegistry INSTANCE = new RedisTypeRegistry();
+    private static final int DEFAULT_MAX_SIZE = 1024;
+    private static final long DEFAULT_NEGATIVE_TTL = 60000;
+
+    private final Map<String, Class<?>> aliases = new ConcurrentHashMap<>();
+    private final ClassValue<String> typeIds = new ClassValue<String>()
+    {
+        @Override
+        protected String computeValue(Class<?> type)
+        {
+            for (Entry<String, Class<?>> alias : aliases.entrySet())
+            {
+                if (alias.getValue().equals(type))
+                {
+                    return alias.getKey();
+                }
+            }
+            return type.getName();
+        }
+    };
+    private final Map<ClassLoader, Map<String, CachedType>> cache = new WeakHashMap<>();
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private volatile LoaderCache lastLoaderCache;
+    private final int maxSize;
+    private final long negativeTtl;
+
+
+
+    //----------- Methodes -----------
+    public static RedisTypeRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+
+    public RedisTypeRegistry()
+    {
+        this(DEFAULT_MAX_SIZE, DEFAULT_NEGATIVE_TTL);
+    }
+    public RedisTypeRegistry(int maxSize, long negativeTtl)
+    {
+        this.maxSize = maxSize;
+        this.negativeTtl = negativeTtl;
+    }
+
+
+
+    /**
+     * Cette methode associe un identifiant court à une classe.
+     * @param alias
+     * @param type
+     */
+    public void registerAlias(String alias, Class<?> type)
+    {
+        aliases.put(alias, type);
+        typeIds.remove(type);
+    }
+
+
+
+    /**
+     * Cette methode renvoie l'identifiant de type d'une classe: son alias
+     * s'il existe, son nom qualifié sinon.
+     * @param type
+     *
+     * @return l'identifiant
+     */
+    public String getTypeId(Class<?> type)
+    {
+        return typeIds.get(type);
+    }
+
+
+
+    /**
+     * Cette methode vérifie qu'un identifiant désigne bien la classe.
+     * @param typeId
+     * @param type
+     *
+     * @return true si l'identifiant est l'alias ou le nom de la classe.
+     */
+    public boolean isTypeId(String typeId, Class<?> type)
+    {
+        return typeId!=null && (type.getName().equals(typeId) || type.equals(aliases.get(typeId)));
+    }
+
+
+
+    /**
+     * Cette methode résout un identifiant de type.
+     * @param typeId
+     *
+     * @return la classe ou null si elle est introuvable.
+     */
+    public Class<?> resolve(String typeId)
+    {
+        Class<?> alias = aliases.get(typeId);
+        if (alias!=null)
+        {
+            return alias;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader==null)
+        {
+            loader = RedisTypeRegistry.class.getClassLoader();
+        }
+        Map<String, CachedType> loaderCache = getLoaderCache(loader);
+        CachedType cached = loaderCache.get(typeId);
+        if (cached!=null)
+        {
+            Class<?> type = cached.type!=null?cached.type.get():null;
+            if (type!=null || (cached.type==null && cached.expiration>System.currentTimeMillis()))
+            {
+                return type;
+            }
+        }
+        Class<?> type = loadClass(typeId, loader);
+        if (loaderCache.size()>=maxSize)
+        {
+            Iterator<String> eldest = loaderCache.keySet().iterator();
+            if (eldest.hasNext())
+            {
+                loaderCache.remove(eldest.next());
+            }
+        }
+        loaderCache.put(typeId, new CachedType(type,
+                type!=null?Long.MAX_VALUE:System.currentTimeMillis()+negativeTtl));
+        return type;
+    }
+
+
+
+    public void clear()
+    {
+        cacheLock.lock();
+        try
+        {
+            cache.clear();
+            lastLoaderCache = null;
+        }
+        finally
+        {
+            cacheLock.unlock();
+        }
+    }
+
+
+
+    /**
+     * Cette methode renvoie le cache d'un classloader. Le dernier cache 
+     * servi est relu sans verrou, la table des classloaders n'est 
+     * consultée que lorsque le classloader change.
+     */
+    private Map<String, CachedType> getLoaderCache(ClassLoader loader)
+    {
+        LoaderCache last = lastLoaderCache;
+        if (last!=null && last.loader.get()==loader)
+        {
+            return last.types;
+        }
+        cacheLock.lock();
+        try
+        {
+            Map<String, CachedType> types = cache.computeIfAbsent(loader, k -> new ConcurrentHashMap<>());
+            lastLoaderCache = new LoaderCache(loader, types);
+            return types;
+        }
+        finally
+        {
+            cacheLock.unlock();
+        }
+    }
+
+
+
+    private static Class<?> loadClass(String className, ClassLoader loader)
+    {
+        Class<?> type = null;
+        try
+        {
+            type = Class.forName(className, true, loader);
+        }
+        catch (ClassNotFoundException e)
+        {
+            LOG.debug(e);
+        }
+        if (type==null)
+        {
+            try
+            {
+                type = Class.forName(className);
+            }
+            catch (ClassNotFoundException e)
+            {
+                LOG.error("Classe introuvable pour le type "+className);
+            }
+        }
+        return type;
+    }
+
+
+
+    private static final class CachedType
+    {
+        private final WeakReference<Class<?>> type;
+        private final long expiration;
+
+        private CachedType(Class<?> type, long expiration)
+        {
+            this.type = type!=null?new WeakReference<>(type):null;
+            this.expiration = expiration;
+        }
+    }
+
+
+
+    private static final class LoaderCache
+    {
+        private final WeakReference<ClassLoader> loader;
+        private final Map<String, CachedType> types;
+
+        private LoaderCache(ClassLoader loader, Map<String, CachedType> types)
+        {
+            this.loader = new WeakReference<>(loader);
+            this.types = types;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import fr.lixbox.common.exceptions.BusinessException;
+import fr.lixbox.common.guid.GuidGenerator;
+import fr.lixbox.common.util.StringUtil;
+import fr.lixbox.orm.redis.model.BulkResult;
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+
+/**
+ * Ce tampon diffère l'écriture des entités mises à jour à haute fréquence.
+ * 
+ * Les mises à jour d'une même clé sont fusionnées en mémoire: seule la 
+ * dernière version est écrite, par paquets pipelinés, lorsque le tampon
+ * atteint flushSize entrées ou à chaque flushInterval. Au-delà de maxSize
+ * clés en attente, l'appelant vide lui-même le tampon avant d'y ajouter
+ * son entité, ce qui borne la mémoire et ralentit les producteurs.
+ * 
+ * Les vidages sont sérialisés, une version ne peut donc pas écraser une
+ * version plus récente. Une lecture peut voir l'état précédent pendant la
+ * fenêtre d'attente.
+ * 
+ * @author ludovic.terral
+ */
+public class RedisWriteBehindBuffer implements Closeable
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisWriteBehindBuffer.class);
+    
+    private final ExtendRedisClient client;
+    private final int flushSize;
+    private final int maxSize;
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private Map<String, RedisSearchDao> pending = new LinkedHashMap<>();
+    private boolean closed = false;
+    
+    
+    
+    //----------- Methodes -----------
+    /**
+     * @param client
+     * @param flushSize nombre de clés en attente qui déclenche un vidage
+     * @param maxSize nombre maximal de clés en attente
+     * @param flushInterval intervalle entre deux vidages périodiques, en ms
+     */
+    public RedisWriteBehindBuffer(ExtendRedisClient client, int flushSize, int maxSize, long flushInterval)
+    {
+        this.client = client;
+        this.flushSize = flushSize;
+        this.maxSize = Math.max(maxSize, flushSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::safeFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    
+    /**
+     * Cette methode place une entité dans le tampon. Son identifiant est 
+     * attribué immédiatement s'il est absent. L'entité ne doit plus être
+     * modifiée par l'appelant s'il veut que la version écrite soit celle
+     * de cet appel.
+     * @param object
+     * 
+     * @return l'entité
+     * 
+     * @throws BusinessException si le tampon est fermé et que l'écriture
+     * directe échoue
+     */
+    public <T extends RedisSearchDao> T merge(T object) throws BusinessException
+    {
+        if (object==null)
+        {
+            return object;
+        }
+        if (StringUtil.isEmpty(object.getOid()))
+        {
+            object.setOid(GuidGenerator.getGUID(object));
+        }
+        String key = object.getKey();
+        while (true)
+        {
+            boolean open;
+            int size = -1;
+            bufferLock.lock();
+            try
+            {
+                open = !closed;
+                if (open && (pending.containsKey(key) || pending.size()<maxSize))
+                {
+                    if (pending.put(key, object)!=null)
+                    {
+                        coalesced.incrementAndGet();
+                    }
+                    size = pending.size();
+                }
+            }
+            finally
+            {
+                bufferLock.unlock();
+            }
+            if (!open)
+            {
+                return mergeDirect(key, object);
+            }
+            if (size>=0)
+            {
+                if (size>=flushSize && flushScheduled.compareAndSet(false, true))
+                {
+                    scheduleFlush();
+                }
+                return object;
+            }
+            if (flush().getSucceeded().isEmpty() && getPendingCount()>=maxSize)
+            {
+                throw new BusinessException("Tampon d'ecriture plein, aucune entite n'a pu etre ecrite");
+            }
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode écrit toutes les entités en attente. Les entités en 
+     * échec sont remises en attente, sauf si une version plus récente de
+     * la même clé y a été placée entre-temps.
+     * 
+     * @return le résultat objet par objet
+     */
+    public BulkResult<RedisSearchDao> flush()
+    {
+        flushLock.lock();
+        try
+        {
+            flushScheduled.set(false);
+            List<RedisSearchDao> batch;
+            bufferLock.lock();
+            try
+            {
+                batch = new ArrayList<>(pending.values());
+                pending = new LinkedHashMap<>();
+            }
+            finally
+            {
+                bufferLock.unlock();
+            }
+            BulkResult<RedisSearchDao> result;
+            try
+            {
+                result = client.mergeAll(batch);
+            }
+            catch (RuntimeException e)
+            {
+                result = new BulkResult<>();
+                for (RedisSearchDao object : batch)
+                {
+                    result.addFailure(object, e);
+                }
+            }
+            written.addAndGet(result.getSucceeded().size());
+            failed.addAndGet(result.getFailed().size());
+            requeue(result);
+            return result;
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode arrête le vidage périodique puis écrit les entités
+     * encore en attente. Les écritures suivantes sont directes. Les 
+     * vidages sont répétés tant qu'ils écrivent au moins une entité.
+     */
+    @Override
+    public void close()
+    {
+        bufferLock.lock();
+        try
+        {
+            closed = true;
+        }
+        finally
+        {
+            bufferLock.unlock();
+        }
+        scheduler.shutdown();
+        try
+        {
+            if (!scheduler.awaitTermination(1, TimeUnit.MINUTES))
+            {
+                LOG.error("Le vidage periodique du tampon ne s'est pas termine");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        BulkResult<RedisSearchDao> result;
+        do
+        {
+            result = flush();
+        }
+        while (getPendingCount()>0 && !result.getSucceeded().isEmpty());
+        int remaining = getPendingCount();
+        if (remaining>0)
+        {
+            LOG.error(remaining+" entite(s) n'ont pas pu etre ecrites a la fermeture du tampon");
+        }
+    }
+    
+    
+    
+    public int getPendingCount()
+    {
+        bufferLock.lock();
+        try
+        {
+            return pending.size();
+        }
+        finally
+        {
+            bufferLock.unlock();
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le nombre de mises à jour absorbées par une 
+     * version plus récente de la même clé.
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+    
+    
+    
+    public long getWrittenCount()
+    {
+        return written.get();
+    }
+    
+    
+    
+    public long getFailedCount()
+    {
+        return failed.get();
+    }
+    
+    
+    
+    private void scheduleFlush()
+    {
+        try
+        {
+            scheduler.execute(this::safeFlush);
+        }
+        catch (RejectedExecutionException e)
+        {
+            flush();
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode écrit directement une entité après la fermeture. Elle
+     * est sérialisée avec les vidages et retire la version en attente de 
+     * la même clé, qui ne peut donc plus écraser celle-ci.
+     */
+    private <T extends RedisSearchDao> T mergeDirect(String key, T object) throws BusinessException
+    {
+        flushLock.lock();
+        try
+        {
+            bufferLock.lock();
+            try
+            {
+                pending.remove(key);
+            }
+            finally
+            {
+                bufferLock.unlock();
+            }
+            return client.mergeOrThrow(object);
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+    
+    
+    
+    private void requeue(BulkResult<RedisSearchDao> result)
+    {
+        if (result.getFailed().isEmpty())
+        {
+            return;
+        }
+        bufferLock.lock();
+        try
+        {
+            for (RedisSearchDao object : result.getFailed())
+            {
+                LOG.error("Echec de l'ecriture differee de "+object.getKey()+", entite remise en attente", 
+                        result.getError(object));
+                pending.putIfAbsent(object.getKey(), object);
+            }
+        }
+        finally
+        {
+            bufferLock.unlock();
+        }
+    }
+    
+    
+    
+    private void safeFlush()
+    {
+        try
+        {
+            flush();
+        }
+        catch (Exception e)
+        {
+            LOG.error("Echec du vidage du tampon d'ecriture", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol.SearchKeyword;
+
+/**
+ * Cette requête ajoute une clause RETURN à une requête existante sans la
+ * modifier. Elle ne doit envelopper qu'une requête sans RETURN.
+ *
+ * @author ludovic.terral
+ */
+final class ReturnFieldsQuery extends Query
+{
+    // ----------- Attibuts -----------
+    private final Query query;
+    private final String[] returnFields;
+
+
+
+    //----------- Methodes -----------
+    ReturnFieldsQuery(Query query, String... returnFields)
+    {
+        this.query = query;
+        this.returnFields = returnFields;
+    }
+
+
+
+    @Override
+    public void addParams(CommandArguments args)
+    {
+        query.addParams(args);
+        args.add(SearchKeyword.RETURN).add(returnFields.length).addObjects((Object[]) returnFields);
+    }
+
+
+
+    @Override
+    public boolean getNoContent()
+    {
+        return query.getNoContent();
+    }
+
+
+
+    @Override
+    public boolean getWithScores()
+    {
+        return query.getWithScores();
+    }
+}
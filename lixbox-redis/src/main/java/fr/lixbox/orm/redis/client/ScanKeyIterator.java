@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.ScanIteration;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+/**
+ * Cet iterateur parcourt les clés par SCAN incrémental. Chaque page
+ * est chargée à la demande, le keyspace n'est jamais bloqué. En mode
+ * cluster le SCAN est déroulé successivement sur chaque maître.
+ *
+ * @author ludovic.terral
+ */
+public class ScanKeyIterator implements Iterator<String>
+{
+    // ----------- Attibuts -----------
+    private final UnifiedJedis redisClient;
+    private final ScanParams params;
+    private final ScanIteration clusterScan;
+    private String cursor = ScanParams.SCAN_POINTER_START;
+    private boolean completed = false;
+    private Iterator<String> page = Collections.emptyIterator();
+
+
+
+    //----------- Methodes -----------
+    public ScanKeyIterator(UnifiedJedis redisClient, String pattern, int count)
+    {
+        this.redisClient = redisClient;
+        this.params = new ScanParams().match(pattern).count(count);
+        this.clusterScan = redisClient instanceof JedisCluster?redisClient.scanIteration(count, pattern):null;
+    }
+
+
+
+    /**
+     * Cette methode renvoie les clés de la prochaine page non vide.
+     *
+     * @return la page ou null si le parcours est terminé.
+     */
+    public List<String> nextPage()
+    {
+        while (!completed)
+        {
+            ScanResult<String> result;
+            if (clusterScan!=null)
+            {
+                result = clusterScan.nextBatch();
+                completed = clusterScan.isIterationCompleted();
+            }
+            else
+            {
+                result = redisClient.scan(cursor, params);
+                cursor = result.getCursor();
+                completed = result.isCompleteIteration();
+            }
+            if (!result.getResult().isEmpty())
+            {
+                return result.getResult();
+            }
+        }
+        return null;
+    }
+
+
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!page.hasNext())
+        {
+            List<String> keys = nextPage();
+            if (keys==null)
+            {
+                return false;
+            }
+            page = keys.iterator();
+        }
+        return true;
+    }
+
+
+
+    @Override
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+}
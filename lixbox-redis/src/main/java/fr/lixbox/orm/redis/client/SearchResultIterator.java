@@ -0,0 +1,121 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.lixbox.orm.redis.model.EQuery;
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.FtAggregateIteration;
+import redis.clients.jedis.search.aggr.Row;
+
+/**
+ * Cet iterateur parcourt le résultat d'une recherche par pages successives
+ * lues sur un curseur FT.AGGREGATE WITHCURSOR. Chaque page coûte donc la 
+ * même chose quelle que soit sa position, sans la limite MAXSEARCHRESULTS
+ * d'une pagination par LIMIT. Chaque page est hydratée en un seul MGET.
+ * Le curseur est ouvert à la première lecture sur le noeud choisi par le
+ * routage des lectures, avec repli sur le maître si le réplica est 
+ * injoignable, puis toutes les pages sont lues sur ce noeud. Un curseur 
+ * abandonné expire côté serveur après son délai d'inactivité. La requête 
+ * de l'appelant n'est pas modifiée.
+ *
+ * @author ludovic.terral
+ */
+public class SearchResultIterator<T extends RedisSearchDao> implements Iterator<T>
+{
+    // ----------- Attibuts -----------
+    private final ExtendRedisClient client;
+    private final Class<T> entityClass;
+    private final AggregationBuilder aggregation;
+    private UnifiedJedis redisClient;
+    private FtAggregateIteration iteration;
+    private Iterator<T> page = Collections.emptyIterator();
+
+
+
+    //----------- Methodes -----------
+    public SearchResultIterator(ExtendRedisClient client, Class<T> entityClass, EQuery query, int pageSize)
+    {
+        this.client = client;
+        this.entityClass = entityClass;
+        this.aggregation = client.toCursorAggregation(query, pageSize>0?pageSize:EQuery.DEFAULT_LIMIT);
+    }
+
+
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!page.hasNext())
+        {
+            Collection<Row> rows;
+            if (iteration==null)
+            {
+                rows = client.read(client.getReadMode(), this::openCursor);
+            }
+            else if (iteration.isIterationCompleted())
+            {
+                return false;
+            }
+            else
+            {
+                rows = iteration.nextBatchList();
+            }
+            page = client.hydrate(redisClient, entityClass, rows).iterator();
+        }
+        return true;
+    }
+
+
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+
+
+    /**
+     * Cette methode ouvre le curseur sur un noeud et lit sa première page.
+     */
+    private Collection<Row> openCursor(UnifiedJedis target)
+    {
+        return client.onIndex(entityClass, () -> {
+            iteration = target.ftAggregateIteration(entityClass.getName(), aggregation);
+            redisClient = target;
+            return iteration.nextBatchList();
+        });
+    }
+}
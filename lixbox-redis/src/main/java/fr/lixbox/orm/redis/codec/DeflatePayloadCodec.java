@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Ce codec compresse, au-delà d'un seuil de taille, les valeurs produites
+ * par un autre codec. Les valeurs sous le seuil sont stockées telles que
+ * produites par le codec délégué.
+ * 
+ * @author ludovic.terral
+ */
+public class DeflatePayloadCodec implements RedisPayloadCodec
+{
+    // ----------- Attibuts -----------
+    private static final long serialVersionUID = 202410181621L;
+    public static final byte MARKER = 0x01;
+    private static final int DEFAULT_THRESHOLD = 1024;
+    
+    private final RedisPayloadCodec delegate;
+    private final int threshold;
+    
+    
+    
+    //----------- Methodes -----------
+    public DeflatePayloadCodec()
+    {
+        this(JsonPayloadCodec.INSTANCE, DEFAULT_THRESHOLD);
+    }
+    public DeflatePayloadCodec(RedisPayloadCodec delegate, int threshold)
+    {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+    
+    
+    
+    @Override
+    public byte getMarker()
+    {
+        return MARKER;
+    }
+    
+    
+    
+    @Override
+    public byte[] encode(Object payload)
+    {
+        byte[] raw = delegate.encode(payload);
+        if (raw.length<threshold)
+        {
+            return raw;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length/2+1);
+            out.write(MARKER);
+            byte[] buffer = new byte[Math.min(raw.length, 8192)];
+            while (!deflater.finished())
+            {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+    
+    
+    
+    @Override
+    public <T> T decode(byte[] data, int offset, Class<T> type)
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(data, offset, data.length-offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length*4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished())
+            {
+                int count = inflater.inflate(buffer);
+                if (count==0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IllegalArgumentException("Valeur compressee tronquee");
+                }
+                out.write(buffer, 0, count);
+            }
+            return RedisPayloadCodecs.decode(out.toByteArray(), type);
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalArgumentException("Valeur compressee invalide", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
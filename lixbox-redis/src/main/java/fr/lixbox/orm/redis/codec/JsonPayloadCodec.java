@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.codec;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Ce codec stocke les entités en json, sans marqueur. C'est le format
+ * par défaut et celui des valeurs écrites avant l'introduction des codecs.
+ * 
+ * Les octets sont écrits et lus directement par Jackson, sans chaîne 
+ * intermédiaire, et le JavaType de chaque classe est calculé une seule fois.
+ * 
+ * @author ludovic.terral
+ */
+public class JsonPayloadCodec implements RedisPayloadCodec
+{
+    // ----------- Attibuts -----------
+    private static final long serialVersionUID = 202410181620L;
+    public static final JsonPayloadCodec INSTANCE = new JsonPayloadCodec();
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final ClassValue<JavaType> TYPES = new ClassValue<JavaType>()
+    {
+        @Override
+        protected JavaType computeValue(Class<?> type)
+        {
+            return MAPPER.constructType(type);
+        }
+    };
+    
+    
+    
+    //----------- Methodes -----------
+    @Override
+    public byte getMarker()
+    {
+        return NO_MARKER;
+    }
+    
+    
+    
+    @Override
+    public byte[] encode(Object payload)
+    {
+        try
+        {
+            return MAPPER.writeValueAsBytes(payload);
+        }
+        catch (JsonProcessingException e)
+        {
+            throw new IllegalArgumentException("Serialisation json impossible", e);
+        }
+    }
+    
+    
+    
+    @Override
+    public <T> T decode(byte[] data, int offset, Class<T> type)
+    {
+        try
+        {
+            return MAPPER.readValue(data, offset, data.length-offset, TYPES.get(type));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Valeur json invalide", e);
+        }
+    }
+    public <T> T decode(String json, Class<T> type)
+    {
+        try
+        {
+            return MAPPER.readValue(json, TYPES.get(type));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Valeur json invalide", e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.codec;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.lixbox.io.json.JsonUtil;
+
+/**
+ * Cet encodeur convertit les valeurs d'index d'une entité en texte pour
+ * le hash redis.
+ * 
+ * Les nombres, booléens, énumérations, dates et chaînes sont écrits
+ * directement. Seules les valeurs complexes passent par json. L'encodeur
+ * de chaque champ est mémorisé par classe d'entité.
+ * 
+ * @author ludovic.terral
+ */
+public final class RedisIndexFieldEncoder
+{
+    // ----------- Attibuts -----------
+    private static final ClassValue<RedisIndexFieldEncoder> ENCODERS = new ClassValue<RedisIndexFieldEncoder>()
+    {
+        @Override
+        protected RedisIndexFieldEncoder computeValue(Class<?> type)
+        {
+            return new RedisIndexFieldEncoder();
+        }
+    };
+    private static final String NULL_VALUE = "null";
+    
+    private final Map<String, ValueEncoder> fieldEncoders = new ConcurrentHashMap<>();
+    
+    
+    
+    //----------- Methodes -----------
+    private RedisIndexFieldEncoder()
+    {
+        //par classe d'entite
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie l'encodeur associé à une classe d'entité.
+     * @param entityClass
+     * 
+     * @return l'encodeur
+     */
+    public static RedisIndexFieldEncoder forClass(Class<?> entityClass)
+    {
+        return ENCODERS.get(entityClass);
+    }
+    
+    
+    
+    /**
+     * Cette methode encode les valeurs d'index dans un hash dimensionné
+     * pour recevoir extraFields champs supplémentaires.
+     * @param indexFieldValues
+     * @param extraFields
+     * 
+     * @return le hash à écrire
+     */
+    public Map<String, String> encode(Map<String, Object> indexFieldValues, int extraFields)
+    {
+        int size = (indexFieldValues!=null?indexFieldValues.size():0)+extraFields;
+        Map<String, String> result = new HashMap<>((int) (size/0.75f)+1);
+        if (indexFieldValues!=null)
+        {
+            for (Entry<String, Object> entry : indexFieldValues.entrySet())
+            {
+                result.put(entry.getKey(), encodeField(entry.getKey(), entry.getValue()));
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode encode une valeur sans passer par le cache des champs.
+     * @param value
+     * 
+     * @return la valeur textuelle
+     */
+    public static String encodeValue(Object value)
+    {
+        if (value==null)
+        {
+            return NULL_VALUE;
+        }
+        return ValueEncoder.of(value).encode(value);
+    }
+    
+    
+    
+    private String encodeField(String fieldName, Object value)
+    {
+        if (value==null)
+        {
+            return NULL_VALUE;
+        }
+        ValueEncoder encoder = fieldEncoders.get(fieldName);
+        if (encoder==null || !encoder.accepts(value))
+        {
+            encoder = ValueEncoder.of(value);
+            fieldEncoders.put(fieldName, encoder);
+        }
+        return encoder.encode(value);
+    }
+    
+    
+    
+    private enum ValueEncoder
+    {
+        STRING
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return value instanceof String;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return (String) value;
+            }
+        },
+        SCALAR
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return value instanceof Number || value instanceof Boolean || value instanceof Character;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return value.toString();
+            }
+        },
+        ENUM
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return value instanceof Enum;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return ((Enum<?>) value).name();
+            }
+        },
+        CALENDAR
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return value instanceof Calendar;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return Long.toString(((Calendar) value).getTimeInMillis());
+            }
+        },
+        DATE
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return value instanceof Date;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return Long.toString(((Date) value).getTime());
+            }
+        },
+        JSON
+        {
+            @Override
+            boolean accepts(Object value)
+            {
+                return true;
+            }
+            @Override
+            String encode(Object value)
+            {
+                return JsonUtil.transformObjectToJson(value, false).replace("\"", "");
+            }
+        };
+        
+        abstract boolean accepts(Object value);
+        abstract String encode(Object value);
+        
+        private static ValueEncoder of(Object value)
+        {
+            ValueEncoder result = JSON;
+            for (ValueEncoder encoder : values())
+            {
+                if (encoder.accepts(value))
+                {
+                    result = encoder;
+                    break;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.codec;
+
+import java.io.Serializable;
+
+/**
+ * Ce contrat décrit la sérialisation binaire des entités stockées dans redis.
+ * 
+ * Chaque valeur produite commence par le marqueur du codec, ce qui permet
+ * à plusieurs formats de cohabiter pendant une migration. Seul le json, 
+ * format historique, est écrit sans marqueur. Les marqueurs 0x01 à 0x08 
+ * sont réservés: un json ne commence jamais par ces octets.
+ * 
+ * @author ludovic.terral
+ */
+public interface RedisPayloadCodec extends Serializable
+{
+    /** marqueur du json historique, écrit sans préfixe */
+    byte NO_MARKER = 0;
+    
+    
+    
+    byte getMarker();
+    
+    
+    
+    /**
+     * Cette methode encode un objet, marqueur compris.
+     * @param payload
+     * 
+     * @return la valeur à stocker
+     */
+    byte[] encode(Object payload);
+    
+    
+    
+    /**
+     * Cette methode décode une valeur, marqueur exclu.
+     * @param data la valeur stockée
+     * @param offset position du premier octet après le marqueur
+     * @param type la classe attendue
+     * 
+     * @return l'objet décodé
+     */
+    <T> T decode(byte[] data, int offset, Class<T> type);
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.codec;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cette classe retrouve, à partir du marqueur en tête de chaque valeur,
+ * le codec capable de la décoder.
+ * 
+ * @author ludovic.terral
+ */
+public class RedisPayloadCodecs
+{
+    // ----------- Attibuts -----------
+    private static final int MAX_MARKER = 0x08;
+    private static final AtomicReferenceArray<RedisPayloadCodec> CODECS = new AtomicReferenceArray<>(MAX_MARKER+1);
+    static
+    {
+        CODECS.set(DeflatePayloadCodec.MARKER, new DeflatePayloadCodec());
+    }
+    
+    
+    
+    //----------- Methodes -----------
+    private RedisPayloadCodecs()
+    {
+        //singleton
+    }
+    
+    
+    
+    /**
+     * Cette methode déclare un codec pour le décodage des valeurs portant 
+     * son marqueur.
+     * @param codec
+     */
+    public static void register(RedisPayloadCodec codec)
+    {
+        int marker = codec.getMarker();
+        if (marker==RedisPayloadCodec.NO_MARKER)
+        {
+            return;
+        }
+        if (marker<0 || marker>MAX_MARKER)
+        {
+            throw new IllegalArgumentException("Marqueur de codec hors de la plage reservee: "+marker);
+        }
+        CODECS.set(marker, codec);
+    }
+    
+    
+    
+    /**
+     * Cette methode indique si une valeur porte le marqueur d'un codec, 
+     * une valeur non marquée étant du json.
+     * @param data
+     * 
+     * @return true si la valeur commence par un marqueur réservé
+     */
+    public static boolean isMarked(byte[] data)
+    {
+        return data!=null && data.length>0 && data[0]>RedisPayloadCodec.NO_MARKER && data[0]<=MAX_MARKER;
+    }
+    
+    
+    
+    /**
+     * Cette methode décode une valeur quel que soit son format.
+     * @param data
+     * @param type
+     * 
+     * @return l'objet décodé, null si la valeur est vide.
+     */
+    public static <T> T decode(byte[] data, Class<T> type)
+    {
+        if (data==null || data.length==0)
+        {
+            return null;
+        }
+        if (isMarked(data))
+        {
+            int marker = data[0];
+            RedisPayloadCodec codec = CODECS.get(marker);
+            if (codec==null)
+            {
+                throw new IllegalStateException("Aucun codec declare pour le marqueur "+marker);
+            }
+            return codec.decode(data, 1, type);
+        }
+        return JsonPayloadCodec.INSTANCE.decode(data, 0, type);
+    }
+}
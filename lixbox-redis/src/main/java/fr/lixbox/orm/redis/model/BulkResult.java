@@ -0,0 +1,89 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cette classe porte le résultat, objet par objet, d'une écriture en masse.
+ *
+ * @author ludovic.terral
+ */
+public class BulkResult<T>
+{
+    // ----------- Attibuts -----------
+    private final List<T> succeeded = new ArrayList<>();
+    private final List<T> failed = new ArrayList<>();
+    private final Map<T, Exception> errors = new IdentityHashMap<>();
+
+
+
+    // ----------- Methodes -----------
+    public synchronized void addSuccess(T object)
+    {
+        succeeded.add(object);
+    }
+    public synchronized void addFailure(T object, Exception error)
+    {
+        failed.add(object);
+        errors.put(object, error);
+    }
+    public synchronized void addAll(BulkResult<T> other)
+    {
+        succeeded.addAll(other.succeeded);
+        failed.addAll(other.failed);
+        errors.putAll(other.errors);
+    }
+
+
+
+    public synchronized List<T> getSucceeded()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(succeeded));
+    }
+    public synchronized List<T> getFailed()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(failed));
+    }
+    public synchronized Exception getError(T object)
+    {
+        return errors.get(object);
+    }
+    public synchronized boolean isSuccess()
+    {
+        return failed.isEmpty();
+    }
+
+
+
+    @Override
+    public synchronized String toString()
+    {
+        return "BulkResult [succeeded=" + succeeded.size() + ", failed=" + failed.size() + "]";
+    }
+}
@@ -1,5 +1,10 @@
 package fr.lixbox.orm.redis.model;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import redis.clients.jedis.search.FieldName;
 import redis.clients.jedis.search.Query;
 
 /**
@@ -7,14 +12,24 @@ import redis.clients.jedis.search.Query;
  */
 public class EQuery extends Query
 {
+    /** nombre maximal de résultats d'une recherche non paginée */
+    public static final int DEFAULT_LIMIT = 500;
+    
     private String _queryString = "*";
+    private final Map<String, Object> _params = new LinkedHashMap<>();
+    private Integer _dialect;
+    private boolean _withReturnFields;
+    private String _sortBy;
+    private boolean _sortAsc = true;
+    private int _offset;
+    private int _limit = DEFAULT_LIMIT;
     
     
     public EQuery() 
     {
         super("*");
         this._queryString="*";
-        this.limit(0, 500);
+        this.limit(0, DEFAULT_LIMIT);
     }
 
 
@@ -23,7 +38,95 @@ public class EQuery extends Query
     {
         super(queryString);
         this._queryString=queryString;
-        this.limit(0, 500);
+        this.limit(0, DEFAULT_LIMIT);
+    }
+    
+    
+    
+    @Override
+    public Query addParam(String name, Object value)
+    {
+        _params.put(name, value);
+        return super.addParam(name, value);
+    }
+    
+    
+    
+    @Override
+    public Query dialect(int dialect)
+    {
+        this._dialect = dialect;
+        return super.dialect(dialect);
+    }
+    
+    
+    
+    @Override
+    public Query setSortBy(String field, boolean ascending)
+    {
+        this._sortBy = field;
+        this._sortAsc = ascending;
+        return super.setSortBy(field, ascending);
+    }
+    
+    
+    
+    @Override
+    public Query limit(Integer offset, Integer limit)
+    {
+        this._offset = offset;
+        this._limit = limit;
+        return super.limit(offset, limit);
+    }
+    
+    
+    
+    @Override
+    public Query returnFields(String... fields)
+    {
+        this._withReturnFields = true;
+        return super.returnFields(fields);
+    }
+    @Override
+    public Query returnFields(FieldName... fields)
+    {
+        this._withReturnFields = true;
+        return super.returnFields(fields);
+    }
+    
+    
+    
+    public String getQueryString()
+    {
+        return _queryString;
+    }
+    public Map<String, Object> getParams()
+    {
+        return Collections.unmodifiableMap(_params);
+    }
+    public Integer getDialect()
+    {
+        return _dialect;
+    }
+    public boolean hasReturnFields()
+    {
+        return _withReturnFields;
+    }
+    public String getSortBy()
+    {
+        return _sortBy;
+    }
+    public boolean isSortAscending()
+    {
+        return _sortAsc;
+    }
+    public int getOffset()
+    {
+        return _offset;
+    }
+    public int getLimit()
+    {
+        return _limit;
     }
     
     
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.util.Calendar;
+
+/**
+ * Cette classe porte le résultat d'une écriture conditionnée par la
+ * version de l'entité: écrite, ou en conflit avec la version stockée.
+ *
+ * @author ludovic.terral
+ */
+public class MergeResult<T>
+{
+    // ----------- Attibuts -----------
+    private final T object;
+    private final boolean conflict;
+    private final Calendar storedVersion;
+
+
+
+    // ----------- Methodes -----------
+    private MergeResult(T object, boolean conflict, Calendar storedVersion)
+    {
+        this.object = object;
+        this.conflict = conflict;
+        this.storedVersion = storedVersion;
+    }
+    public static <T> MergeResult<T> merged(T object)
+    {
+        return new MergeResult<>(object, false, null);
+    }
+    public static <T> MergeResult<T> conflict(T object, Calendar storedVersion)
+    {
+        return new MergeResult<>(object, true, storedVersion);
+    }
+
+
+
+    public T getObject()
+    {
+        return object;
+    }
+    public boolean isMerged()
+    {
+        return !conflict;
+    }
+    public boolean isConflict()
+    {
+        return conflict;
+    }
+    /**
+     * Cette methode renvoie la version trouvée sur le serveur lors d'un
+     * conflit, null si l'écriture a eu lieu ou si l'entité n'est plus 
+     * stockée.
+     */
+    public Calendar getStoredVersion()
+    {
+        return storedVersion;
+    }
+
+
+
+    @Override
+    public String toString()
+    {
+        return "MergeResult [conflict=" + conflict + ", storedVersion=" + 
+            (storedVersion!=null?storedVersion.getTimeInMillis():null) + "]";
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import redis.clients.jedis.search.Schema;
+
+/**
+ * Cette interface est le contrat des accesseurs d'index générés par
+ * RedisIndexedProcessor à partir des annotations RedisIndexed.
+ * 
+ * @author ludovic.terral
+ */
+public interface RedisIndexAccessor<T>
+{
+    Schema getIndexSchema();
+    
+    
+    
+    /**
+     * Cette methode écrit les valeurs d'index de l'entité, déjà
+     * converties en texte, dans le hash.
+     * @param entity
+     * @param hash
+     */
+    void writeIndexFields(T entity, Map<String, String> hash);
+    
+    
+    
+    /**
+     * Cette methode renvoie les valeurs d'index de l'entité sous la forme
+     * attendue par getIndexFieldValues.
+     * @param entity
+     * 
+     * @return les valeurs d'index
+     */
+    default Map<String, Object> toIndexFieldValues(T entity)
+    {
+        Map<String, String> hash = new HashMap<>();
+        writeIndexFields(entity, hash);
+        return new HashMap<>(hash);
+    }
+}
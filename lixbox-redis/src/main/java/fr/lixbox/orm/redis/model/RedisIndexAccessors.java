@@ -0,0 +1,106 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cette classe retrouve l'accesseur d'index généré pour une entité. La
+ * recherche n'a lieu qu'une fois par classe.
+ * 
+ * @author ludovic.terral
+ */
+public final class RedisIndexAccessors
+{
+    // ----------- Attibuts -----------
+    private static final Log LOG = LogFactory.getLog(RedisIndexAccessors.class);
+    public static final String ACCESSOR_SUFFIX = "RedisIndexAccessor";
+    
+    private static final ClassValue<RedisIndexAccessor<?>> ACCESSORS = new ClassValue<RedisIndexAccessor<?>>()
+    {
+        @Override
+        protected RedisIndexAccessor<?> computeValue(Class<?> type)
+        {
+            return loadAccessor(type);
+        }
+    };
+    
+    
+    
+    //----------- Methodes -----------
+    private RedisIndexAccessors()
+    {
+        //singleton
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie l'accesseur généré pour une entité.
+     * @param entityClass
+     * 
+     * @return l'accesseur ou null si l'entité n'est pas annotée.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RedisIndexAccessor<T> forClass(Class<? extends T> entityClass)
+    {
+        return (RedisIndexAccessor<T>) ACCESSORS.get(entityClass);
+    }
+    
+    
+    
+    /**
+     * Cette methode calcule le nom de l'accesseur généré pour une classe,
+     * selon la même règle que RedisIndexedProcessor.
+     * @param binaryName nom binaire de l'entité
+     * 
+     * @return le nom qualifié de l'accesseur
+     */
+    public static String getAccessorName(String binaryName)
+    {
+        return binaryName.replace('$', '_')+ACCESSOR_SUFFIX;
+    }
+    
+    
+    
+    private static RedisIndexAccessor<?> loadAccessor(Class<?> type)
+    {
+        RedisIndexAccessor<?> result = null;
+        try
+        {
+            Class<?> accessorClass = Class.forName(getAccessorName(type.getName()), true, type.getClassLoader());
+            result = (RedisIndexAccessor<?>) accessorClass.getField("INSTANCE").get(null);
+        }
+        catch (ClassNotFoundException e)
+        {
+            LOG.trace("Aucun accesseur d'index genere pour "+type.getName());
+        }
+        catch (ReflectiveOperationException | ClassCastException e)
+        {
+            LOG.error("Accesseur d'index invalide pour "+type.getName(), e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import redis.clients.jedis.search.Schema;
+import redis.clients.jedis.search.Schema.Field;
+import redis.clients.jedis.search.Schema.FieldType;
+
+/**
+ * Cette classe est la description figée de l'index d'une entité.
+ * 
+ * Le schéma est calculé une seule fois par classe, à partir d'une
+ * instance, avec la table nom de champ vers type utilisée par le
+ * générateur de requêtes et l'empreinte utilisée pour versionner l'index.
+ * 
+ * @author ludovic.terral
+ */
+public final class RedisIndexSchema
+{
+    // ----------- Attibuts -----------
+    private static final ClassValue<AtomicReference<RedisIndexSchema>> SCHEMAS = 
+        new ClassValue<AtomicReference<RedisIndexSchema>>()
+    {
+        @Override
+        protected AtomicReference<RedisIndexSchema> computeValue(Class<?> type)
+        {
+            return new AtomicReference<>();
+        }
+    };
+    
+    private final List<Field> fields;
+    private final Map<String, FieldType> fieldTypes;
+    private final long ttl;
+    private final String fingerprint;
+    
+    
+    
+    //----------- Methodes -----------
+    private RedisIndexSchema(Schema schema, long ttl)
+    {
+        Map<String, FieldType> types = new LinkedHashMap<>();
+        for (Field field : schema.fields)
+        {
+            types.put(field.getName().getName(), field.getType());
+        }
+        this.fields = Collections.unmodifiableList(new ArrayList<>(schema.fields));
+        this.fieldTypes = Collections.unmodifiableMap(types);
+        this.ttl = ttl;
+        this.fingerprint = computeFingerprint(this.fields, ttl);
+    }
+    
+    
+    
+    /**
+     * Cette methode renvoie le schéma de la classe de l'entité, calculé
+     * lors du premier appel. Le cache est porté par la classe elle-même,
+     * il ne retient donc pas son classloader.
+     * @param object une instance de l'entité
+     * 
+     * @return le schéma figé
+     */
+    public static RedisIndexSchema of(RedisSearchDao object)
+    {
+        AtomicReference<RedisIndexSchema> holder = SCHEMAS.get(object.getClass());
+        RedisIndexSchema result = holder.get();
+        if (result==null)
+        {
+            RedisIndexSchema computed = new RedisIndexSchema(object.getIndexSchema(), object.getTTL());
+            result = holder.compareAndSet(null, computed)?computed:holder.get();
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode oublie le schéma d'une classe, qui sera recalculé
+     * au prochain appel.
+     * @param entityClass
+     */
+    public static void invalidate(Class<?> entityClass)
+    {
+        SCHEMAS.remove(entityClass);
+    }
+    
+    
+    
+    public List<Field> getFields()
+    {
+        return fields;
+    }
+    
+    
+    
+    public Map<String, FieldType> getFieldTypes()
+    {
+        return fieldTypes;
+    }
+    
+    
+    
+    public FieldType getFieldType(String fieldName)
+    {
+        return fieldTypes.get(fieldName);
+    }
+    
+    
+    
+    public long getTTL()
+    {
+        return ttl;
+    }
+    
+    
+    
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+    
+    
+    
+    /**
+     * Cette methode construit un Schema jedis pour la création de l'index.
+     * 
+     * @return une copie du schéma
+     */
+    public Schema toSchema()
+    {
+        Schema schema = new Schema();
+        for (Field field : fields)
+        {
+            schema.addField(field);
+        }
+        return schema;
+    }
+    
+    
+    
+    private static String computeFingerprint(List<Field> fields, long ttl)
+    {
+        StringBuilder description = new StringBuilder();
+        for (Field field : fields)
+        {
+            description.append(field.toString()).append(';');
+        }
+        description.append("ttl=").append(ttl>0?ttl/1000:0);
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(description.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length*2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b>>4)&0xF, 16)).append(Character.forDigit(b&0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(description.toString().hashCode());
+        }
+    }
+}
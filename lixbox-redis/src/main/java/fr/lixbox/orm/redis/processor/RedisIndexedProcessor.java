@@ -0,0 +1,365 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Ce processeur génère, pour chaque entité portant des attributs
+ * RedisIndexed, une classe NomEntiteRedisIndexAccessor dans le package de
+ * l'entité.
+ * 
+ * L'accesseur généré décrit le schéma de l'index et écrit chaque valeur
+ * dans le hash par un appel direct au getter, avec une conversion
+ * choisie à la compilation selon le type de l'attribut.
+ * 
+ * @author ludovic.terral
+ */
+@SupportedAnnotationTypes(RedisIndexedProcessor.ANNOTATION_NAME)
+public class RedisIndexedProcessor extends AbstractProcessor
+{
+    // ----------- Attibuts -----------
+    static final String ANNOTATION_NAME = "fr.lixbox.orm.redis.annotation.RedisIndexed";
+    private static final String SANITIZER = "fr.lixbox.orm.redis.query.RedisSearchValueSanitizer.sanitizeValue";
+    private static final String ENCODER = "fr.lixbox.orm.redis.codec.RedisIndexFieldEncoder.encodeValue";
+    private static final String ACCESSOR_SUFFIX = "RedisIndexAccessor";
+    
+    
+    
+    //----------- Methodes -----------
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+    
+    
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        Map<TypeElement, List<VariableElement>> entities = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations)
+        {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                if (element.getKind()==ElementKind.FIELD)
+                {
+                    entities.computeIfAbsent((TypeElement) element.getEnclosingElement(), k -> new ArrayList<>())
+                            .add((VariableElement) element);
+                }
+            }
+        }
+        for (Entry<TypeElement, List<VariableElement>> entity : entities.entrySet())
+        {
+            try
+            {
+                generateAccessor(entity.getKey(), entity.getValue());
+            }
+            catch (IOException e)
+            {
+                processingEnv.getMessager().printMessage(Kind.ERROR, 
+                        "Impossible de generer l'accesseur d'index: "+e.getMessage(), entity.getKey());
+            }
+        }
+        return true;
+    }
+    
+    
+    
+    private void generateAccessor(TypeElement entity, List<VariableElement> fields) throws IOException
+    {
+        String accessorName = processingEnv.getElementUtils().getBinaryName(entity).toString()
+                .replace('$', '_')+ACCESSOR_SUFFIX;
+        String packageName = processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+        String simpleName = accessorName.substring(accessorName.lastIndexOf('.')+1);
+        String entityName = entity.getQualifiedName().toString();
+        
+        List<IndexedField> indexedFields = new ArrayList<>();
+        for (VariableElement field : fields)
+        {
+            IndexedField indexedField = readField(entity, field);
+            if (indexedField==null)
+            {
+                return;
+            }
+            indexedFields.add(indexedField);
+        }
+        
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(accessorName, entity);
+        try (PrintWriter out = new PrintWriter(source.openWriter()))
+        {
+            if (!packageName.isEmpty())
+            {
+                out.println("package "+packageName+";");
+                out.println();
+            }
+            out.println("import java.util.Map;");
+            out.println();
+            out.println("import fr.lixbox.orm.redis.model.RedisIndexAccessor;");
+            out.println("import redis.clients.jedis.search.Schema;");
+            out.println();
+            out.println("/**");
+            out.println(" * Accesseur d'index genere par RedisIndexedProcessor pour "+entityName+".");
+            out.println(" */");
+            out.println("@javax.annotation.processing.Generated(\""+RedisIndexedProcessor.class.getName()+"\")");
+            out.println("public final class "+simpleName+" implements RedisIndexAccessor<"+entityName+">");
+            out.println("{");
+            out.println("    public static final "+simpleName+" INSTANCE = new "+simpleName+"();");
+            out.println();
+            out.println("    private "+simpleName+"()");
+            out.println("    {");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public Schema getIndexSchema()");
+            out.println("    {");
+            out.println("        return new Schema()");
+            for (IndexedField field : indexedFields)
+            {
+                out.println("                ."+field.schemaCall());
+            }
+            out.println("                ;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void writeIndexFields("+entityName+" entity, Map<String, String> hash)");
+            out.println("    {");
+            for (IndexedField field : indexedFields)
+            {
+                field.writeValue(out);
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+    
+    
+    
+    private IndexedField readField(TypeElement entity, VariableElement field)
+    {
+        IndexedField result = new IndexedField();
+        result.name = field.getSimpleName().toString();
+        result.type = "TEXT";
+        result.weight = 1.0;
+        for (AnnotationMirror mirror : field.getAnnotationMirrors())
+        {
+            if (!ANNOTATION_NAME.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString()))
+            {
+                continue;
+            }
+            for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet())
+            {
+                String attribute = entry.getKey().getSimpleName().toString();
+                Object value = entry.getValue().getValue();
+                if ("name".equals(attribute) && !((String) value).isEmpty())
+                {
+                    result.name = (String) value;
+                }
+                else if ("type".equals(attribute))
+                {
+                    result.type = ((VariableElement) value).getSimpleName().toString();
+                }
+                else if ("sortable".equals(attribute))
+                {
+                    result.sortable = (Boolean) value;
+                }
+                else if ("weight".equals(attribute))
+                {
+                    result.weight = ((Number) value).doubleValue();
+                }
+            }
+        }
+        if (!"TEXT".equals(result.type) && !"NUMERIC".equals(result.type) 
+                && !"TAG".equals(result.type) && !"GEO".equals(result.type))
+        {
+            processingEnv.getMessager().printMessage(Kind.ERROR, 
+                    "Type de champ non supporte par RedisIndexed: "+result.type, field);
+            return null;
+        }
+        result.getter = findAccessor(entity, field);
+        if (result.getter==null)
+        {
+            processingEnv.getMessager().printMessage(Kind.ERROR, 
+                    "Aucun getter accessible depuis le package pour l'attribut indexe "+field.getSimpleName(), field);
+            return null;
+        }
+        result.valueType = field.asType();
+        result.conversion = resolveConversion(result.valueType, !"TEXT".equals(result.type));
+        return result;
+    }
+    
+    
+    
+    private String findAccessor(TypeElement entity, VariableElement field)
+    {
+        String fieldName = field.getSimpleName().toString();
+        String suffix = Character.toUpperCase(fieldName.charAt(0))+fieldName.substring(1);
+        for (Element member : processingEnv.getElementUtils().getAllMembers(entity))
+        {
+            if (member.getKind()==ElementKind.METHOD && !member.getModifiers().contains(Modifier.PRIVATE)
+                    && !member.getModifiers().contains(Modifier.STATIC)
+                    && ((ExecutableElement) member).getParameters().isEmpty())
+            {
+                String methodName = member.getSimpleName().toString();
+                if (methodName.equals("get"+suffix) || methodName.equals("is"+suffix))
+                {
+                    return "entity."+methodName+"()";
+                }
+            }
+        }
+        return field.getModifiers().contains(Modifier.PRIVATE)?null:"entity."+fieldName;
+    }
+    
+    
+    
+    /**
+     * Cette methode choisit l'expression de conversion en texte d'une
+     * valeur selon son type, {0} désignant la valeur. Seuls les champs
+     * TEXT passent par le sanitizer.
+     */
+    private String resolveConversion(TypeMirror valueType, boolean raw)
+    {
+        String result;
+        if (valueType.getKind().isPrimitive())
+        {
+            result = raw?"String.valueOf({0})":SANITIZER+"(String.valueOf({0}))";
+        }
+        else if (isSubtype(valueType, "java.lang.String"))
+        {
+            result = raw?"{0}":SANITIZER+"({0})";
+        }
+        else if (isSubtype(valueType, "java.util.Calendar"))
+        {
+            result = "Long.toString({0}.getTimeInMillis())";
+        }
+        else if (isSubtype(valueType, "java.util.Date"))
+        {
+            result = "Long.toString({0}.getTime())";
+        }
+        else if (valueType.getKind()==TypeKind.DECLARED 
+                && ((DeclaredType) valueType).asElement().getKind()==ElementKind.ENUM)
+        {
+            result = raw?"{0}.name()":SANITIZER+"({0}.name())";
+        }
+        else if (isSubtype(valueType, "java.lang.Number") || isSubtype(valueType, "java.lang.Boolean")
+                || isSubtype(valueType, "java.lang.Character"))
+        {
+            result = raw?"{0}.toString()":SANITIZER+"({0}.toString())";
+        }
+        else
+        {
+            result = raw?ENCODER+"({0})":SANITIZER+"((Object) {0})";
+        }
+        return result;
+    }
+    
+    
+    
+    private boolean isSubtype(TypeMirror valueType, String className)
+    {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        return element!=null && processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(valueType), processingEnv.getTypeUtils().erasure(element.asType()));
+    }
+    
+    
+    
+    private static final class IndexedField
+    {
+        private String name;
+        private String type;
+        private boolean sortable;
+        private double weight;
+        private String getter;
+        private TypeMirror valueType;
+        private String conversion;
+        
+        private String schemaCall()
+        {
+            String quotedName = "\""+name+"\"";
+            switch (type)
+            {
+                case "NUMERIC":
+                    return (sortable?"addSortableNumericField(":"addNumericField(")+quotedName+")";
+                case "TAG":
+                    return sortable?"addSortableTagField("+quotedName+", \",\")":"addTagField("+quotedName+")";
+                case "GEO":
+                    return "addGeoField("+quotedName+")";
+                default:
+                    return (sortable?"addSortableTextField(":"addTextField(")+quotedName+", "+weight+")";
+            }
+        }
+        
+        private void writeValue(PrintWriter out)
+        {
+            String quotedName = "\""+name+"\"";
+            if (valueType.getKind().isPrimitive())
+            {
+                out.println("        hash.put("+quotedName+", "+conversion.replace("{0}", getter)+");");
+                return;
+            }
+            String variable = "v_"+name.replaceAll("\\W", "_");
+            out.println("        {");
+            out.println("            "+valueType.toString()+" "+variable+" = "+getter+";");
+            out.println("            if ("+variable+"!=null)");
+            out.println("            {");
+            out.println("                hash.put("+quotedName+", "+conversion.replace("{0}", variable)+");");
+            out.println("            }");
+            if ("TEXT".equals(type) || "TAG".equals(type))
+            {
+                out.println("            else");
+                out.println("            {");
+                out.println("                hash.put("+quotedName+", \"\");");
+                out.println("            }");
+            }
+            out.println("        }");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ *
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-orm is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-orm is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.query;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fr.lixbox.common.exceptions.BusinessException;
+import fr.lixbox.common.util.ExceptionUtil;
+import fr.lixbox.orm.redis.client.ExtendRedisClient;
+import fr.lixbox.orm.redis.model.EQuery;
+import fr.lixbox.orm.redis.model.RedisIndexSchema;
+import fr.lixbox.orm.redis.model.RedisSearchDao;
+import redis.clients.jedis.search.Schema.FieldType;
+
+/**
+ * Cette classe est un modèle de requête RediSearch analysé une seule
+ * fois, par exemple "@libelle:$lib @dateEvent:[$from $to]".
+ * 
+ * Les valeurs sont transmises par PARAMS avec DIALECT 2: le texte de la
+ * requête reste identique d'une exécution à l'autre. Les valeurs des
+ * champs TEXT sont normalisées comme à l'indexation.
+ * 
+ * @author ludovic.terral
+ */
+public final class PreparedRedisQuery<T extends RedisSearchDao>
+{
+    // ----------- Attibuts -----------
+    public static final int DIALECT = 2;
+    
+    private final Class<T> entityClass;
+    private final String template;
+    private final List<String> parameterNames;
+    private final boolean[] textParameters;
+    
+    
+    
+    //----------- Methodes -----------
+    private PreparedRedisQuery(Class<T> entityClass, String template, Map<String, String> parameterFields, 
+            RedisIndexSchema schema)
+    {
+        this.entityClass = entityClass;
+        this.template = template;
+        this.parameterNames = Collections.unmodifiableList(new ArrayList<>(parameterFields.keySet()));
+        this.textParameters = new boolean[parameterNames.size()];
+        int ix = 0;
+        for (Entry<String, String> parameter : parameterFields.entrySet())
+        {
+            textParameters[ix++] = schema!=null && parameter.getValue()!=null 
+                    && FieldType.TEXT.equals(schema.getFieldType(parameter.getValue()));
+        }
+    }
+    
+    
+    
+    /**
+     * Cette methode analyse un modèle de requête.
+     * @param entityClass
+     * @param template requête dont les valeurs sont notées $nom
+     * 
+     * @return la requête préparée
+     */
+    public static <T extends RedisSearchDao> PreparedRedisQuery<T> prepare(Class<T> entityClass, String template)
+        throws BusinessException
+    {
+        RedisIndexSchema schema = null;
+        try
+        {
+            schema = RedisIndexSchema.of(entityClass.getDeclaredConstructor().newInstance());
+        }
+        catch (Exception e)
+        {
+            ExceptionUtil.traiterException(e, "Impossible de preparer la requete", true);
+        }
+        return new PreparedRedisQuery<>(entityClass, template, parseParameters(template), schema);
+    }
+    
+    
+    
+    public Class<T> getEntityClass()
+    {
+        return entityClass;
+    }
+    
+    
+    
+    public String getTemplate()
+    {
+        return template;
+    }
+    
+    
+    
+    public List<String> getParameterNames()
+    {
+        return parameterNames;
+    }
+    
+    
+    
+    /**
+     * Cette methode lie les valeurs, dans l'ordre d'apparition des 
+     * paramètres du modèle.
+     * @param values
+     * 
+     * @return la requête à exécuter
+     */
+    public EQuery bind(Object... values)
+    {
+        if (values.length!=parameterNames.size())
+        {
+            throw new IllegalArgumentException("La requete attend "+parameterNames.size()
+                    +" parametres, "+values.length+" fournis");
+        }
+        EQuery query = new EQuery(template);
+        for (int ix=0; ix<values.length; ix++)
+        {
+            query.addParam(parameterNames.get(ix), toParameter(values[ix], textParameters[ix]));
+        }
+        query.dialect(DIALECT);
+        return query;
+    }
+    public EQuery bind(Map<String, ?> values)
+    {
+        EQuery query = new EQuery(template);
+        for (int ix=0; ix<parameterNames.size(); ix++)
+        {
+            String name = parameterNames.get(ix);
+            if (!values.containsKey(name))
+            {
+                throw new IllegalArgumentException("Parametre absent: "+name);
+            }
+            query.addParam(name, toParameter(values.get(name), textParameters[ix]));
+        }
+        query.dialect(DIALECT);
+        return query;
+    }
+    
+    
+    
+    public List<T> execute(ExtendRedisClient client, Object... values) throws BusinessException
+    {
+        return client.findByExpression(entityClass, bind(values));
+    }
+    
+    
+    
+    @Override
+    public String toString()
+    {
+        return "PreparedRedisQuery [ " + template + "]";
+    }
+    
+    
+    
+    private static String toParameter(Object value, boolean text)
+    {
+        String result;
+        if (value instanceof Calendar)
+        {
+            result = Long.toString(((Calendar) value).getTimeInMillis());
+        }
+        else if (value instanceof Date)
+        {
+            result = Long.toString(((Date) value).getTime());
+        }
+        else if (text)
+        {
+            result = RedisSearchValueSanitizer.sanitizeValue(value);
+        }
+        else
+        {
+            result = String.valueOf(value);
+        }
+        return result;
+    }
+    
+    
+    
+    /**
+     * Cette methode relève les paramètres du modèle et le champ auquel 
+     * chacun s'applique.
+     */
+    private static Map<String, String> parseParameters(String template)
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        String field = null;
+        int ix = 0;
+        while (ix<template.length())
+        {
+            char current = template.charAt(ix);
+            if (current=='@' || current=='$')
+            {
+                int end = ix+1;
+                while (end<template.length() && isNameChar(template.charAt(end)))
+                {
+                    end++;
+                }
+                String name = template.substring(ix+1, end);
+                if (current=='@')
+                {
+                    field = name;
+                }
+                else if (!name.isEmpty())
+                {
+                    result.putIfAbsent(name, field);
+                }
+                ix = end;
+            }
+            else
+            {
+                if (current=='(' || current==')' || current=='|')
+                {
+                    field = null;
+                }
+                ix++;
+            }
+        }
+        return result;
+    }
+    
+    
+    
+    private static boolean isNameChar(char character)
+    {
+        return Character.isLetterOrDigit(character) || character=='_';
+    }
+}
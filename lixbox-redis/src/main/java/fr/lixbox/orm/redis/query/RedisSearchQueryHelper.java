@@ -24,12 +24,14 @@
 package fr.lixbox.orm.redis.query;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import fr.lixbox.common.helper.StringTokenizer;
 import fr.lixbox.common.util.CollectionUtil;
 import fr.lixbox.common.util.StringUtil;
+import fr.lixbox.orm.redis.model.RedisIndexSchema;
 import fr.lixbox.orm.redis.model.RedisSearchDao;
-import redis.clients.jedis.search.Schema.Field;
 import redis.clients.jedis.search.Schema.FieldType;
 
 public class RedisSearchQueryHelper
@@ -89,15 +91,14 @@ public class RedisSearchQueryHelper
 	public static String toQueryByCriteria(RedisSearchDao criteria, boolean startWith) {
 		StringBuilder query = new StringBuilder("");
 
-		for (Field index : criteria.getIndexSchema().fields) {
-			String fieldName = index.getName().getName(); // Utilisation du getter
-			FieldType fieldType = index.getType(); // Getter pour le type du champ
+		Map<String, Object> fieldValues = criteria.getIndexFieldValues();
+		for (Entry<String, FieldType> index : RedisIndexSchema.of(criteria).getFieldTypes().entrySet()) {
+			String fieldName = index.getKey();
+			FieldType fieldType = index.getValue();
 
 			// Vérification de la présence de la valeur pour ce champ
-			if (criteria.getIndexFieldValues().containsKey(fieldName)
-					&& criteria.getIndexFieldValues().get(fieldName) != null) {
-
-				Object value = criteria.getIndexFieldValues().get(fieldName);
+			Object value = fieldValues.get(fieldName);
+			if (value != null) {
 
 				// Ajout des champs numériques
 				if (FieldType.NUMERIC.equals(fieldType)) {
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ *    
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *      
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-supervision is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-supervision is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *   
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.util.Calendar;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import fr.lixbox.io.json.JsonUtil;
+import fr.lixbox.orm.entity.model.OptimisticDao;
+import fr.lixbox.orm.redis.annotation.RedisIndexed;
+import redis.clients.jedis.search.Schema;
+import redis.clients.jedis.search.Schema.FieldType;
+
+/**
+ * Cette classe est une entite versionnee, mise a jour par ecriture
+ * conditionnelle.
+ * 
+ * @author ludovic.terral
+ */
+public class Compteur implements RedisSearchDao, OptimisticDao
+{
+    // ----------- Attribut -----------   
+    private static final long serialVersionUID = 202410181620L;
+    
+    @RedisIndexed(sortable=true)
+    private String oid;
+    @RedisIndexed(type=FieldType.NUMERIC)
+    private int valeur;
+    private Calendar version;
+    
+    
+    
+    // ----------- Methode -----------
+    @Override
+    public String getOid()
+    {
+        return this.oid;
+    }
+    @Override
+    public void setOid(String oid)
+    {
+        this.oid = oid;
+    }
+    
+    
+    
+    public int getValeur()
+    {
+        return this.valeur;
+    }
+    public void setValeur(int valeur)
+    {
+        this.valeur = valeur;
+    }
+    
+
+
+    @Override
+    public Calendar getVersion()
+    {
+        return this.version;
+    }
+    @Override
+    public void setVersion(Calendar version)
+    {
+        this.version = version;
+    }
+    
+    
+    
+    @Override
+    public String toString()
+    {
+        return JsonUtil.transformObjectToJson(this, false);
+    }
+    
+    
+    
+    @Override
+    public Schema getIndexSchema()
+    {
+        return CompteurRedisIndexAccessor.INSTANCE.getIndexSchema();
+    }
+    
+    
+    
+    @Override
+    public Map<String, Object> getIndexFieldValues()
+    {
+        return CompteurRedisIndexAccessor.INSTANCE.toIndexFieldValues(this);
+    }
+
+    
+    
+
+    @JsonIgnore
+    public String getKey()
+    {
+        return getIndex()+":"+oid;
+    }
+
+    
+    
+
+    @JsonIgnore
+    public String getIndex()
+    {
+        return "LIXBOX:OBJECT:"+this.getClass().getName();
+    }
+    
+    
+    
+    @Override
+    public long getTTL()
+    {
+        return 0;
+    }
+}
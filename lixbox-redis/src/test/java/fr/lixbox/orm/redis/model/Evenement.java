@@ -0,0 +1,152 @@
+/*******************************************************************************
+ *    
+ *                           FRAMEWORK Lixbox
+ *                          ==================
+ *      
+ * This file is part of lixbox-orm.
+ *
+ *    lixbox-supervision is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    lixbox-supervision is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *    along with lixbox-orm.  If not, see <https://www.gnu.org/licenses/>
+ *   
+ *   @AUTHOR Lixbox-team
+ *
+ ******************************************************************************/
+package fr.lixbox.orm.redis.model;
+
+import java.util.Calendar;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import fr.lixbox.io.json.JsonUtil;
+import fr.lixbox.orm.entity.model.Dao;
+import fr.lixbox.orm.redis.annotation.RedisIndexed;
+import redis.clients.jedis.search.Schema;
+import redis.clients.jedis.search.Schema.FieldType;
+
+/**
+ * Cette classe est une entite dont l'index est decrit par annotations.
+ * 
+ * @author ludovic.terral
+ */
+public class Evenement implements RedisSearchDao, Dao
+{
+    // ----------- Attribut -----------   
+    private static final long serialVersionUID = 202410181620L;
+    
+    @RedisIndexed(sortable=true)
+    private String oid;
+    @RedisIndexed(sortable=true, weight=2)
+    private String libelle;
+    @RedisIndexed(type=FieldType.NUMERIC)
+    private Calendar dateEvent;
+    @RedisIndexed
+    private TypeJour typeJour;
+    
+    
+    
+    // ----------- Methode -----------
+    @Override
+    public String getOid()
+    {
+        return this.oid;
+    }
+    @Override
+    public void setOid(String oid)
+    {
+        this.oid = oid;
+    }
+    
+    
+    
+    public String getLibelle()
+    {
+        return this.libelle;
+    }
+    public void setLibelle(String libelle)
+    {
+        this.libelle = libelle;
+    }
+    
+
+
+    public Calendar getDateEvent()
+    {
+        return this.dateEvent;
+    }
+    public void setDateEvent(final Calendar dateEvent)
+    {
+        this.dateEvent = dateEvent;
+    }
+    
+    
+    
+    public TypeJour getTypeJour()
+    {
+        return typeJour;
+    }
+    public void setTypeJour(TypeJour typeJour)
+    {
+        this.typeJour = typeJour;
+    }
+    
+    
+    
+    @Override
+    public String toString()
+    {
+        return JsonUtil.transformObjectToJson(this, false);
+    }
+    
+    
+    
+    @Override
+    public Schema getIndexSchema()
+    {
+        return EvenementRedisIndexAccessor.INSTANCE.getIndexSchema();
+    }
+    
+    
+    
+    @Override
+    public Map<String, Object> getIndexFieldValues()
+    {
+        return EvenementRedisIndexAccessor.INSTANCE.toIndexFieldValues(this);
+    }
+
+    
+    
+
+    @JsonIgnore
+    public String getKey()
+    {
+        return getIndex()+":"+oid;
+    }
+
+    
+    
+
+    @JsonIgnore
+    public String getIndex()
+    {
+        return "LIXBOX:OBJECT:"+this.getClass().getName();
+    }
+    
+    
+    
+    @Override
+    public long getTTL()
+    {
+        return 0;
+    }
+}
@@ -24,9 +24,22 @@
 package fr.lixbox.orm.redis.test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,10 +50,34 @@ import org.junit.Test;
 
 import fr.lixbox.common.util.CollectionUtil;
 import fr.lixbox.common.util.DateUtil;
+import fr.lixbox.io.json.JsonUtil;
+import fr.lixbox.orm.redis.client.ExtendRedisAsyncClient;
 import fr.lixbox.orm.redis.client.ExtendRedisClient;
+import fr.lixbox.orm.redis.client.RedisOrphanSweeper;
+import fr.lixbox.orm.redis.client.RedisReadMode;
+import fr.lixbox.orm.redis.client.RedisStorageMode;
+import fr.lixbox.orm.redis.client.RedisTypeRegistry;
+import fr.lixbox.orm.redis.client.RedisWriteBehindBuffer;
+import fr.lixbox.orm.redis.codec.DeflatePayloadCodec;
+import fr.lixbox.orm.redis.codec.JsonPayloadCodec;
+import fr.lixbox.orm.redis.codec.RedisIndexFieldEncoder;
+import fr.lixbox.orm.redis.model.BulkResult;
+import fr.lixbox.orm.redis.model.Compteur;
+import fr.lixbox.orm.redis.model.EQuery;
+import fr.lixbox.orm.redis.model.Evenement;
 import fr.lixbox.orm.redis.model.JNO;
+import fr.lixbox.orm.redis.model.MergeResult;
+import fr.lixbox.orm.redis.model.RedisIndexAccessors;
+import fr.lixbox.orm.redis.model.RedisIndexSchema;
 import fr.lixbox.orm.redis.model.TypeJour;
+import fr.lixbox.orm.redis.query.PreparedRedisQuery;
 import fr.lixbox.orm.redis.query.RedisSearchQueryHelper;
+import fr.lixbox.orm.redis.query.RedisSearchValueSanitizer;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.search.Schema.FieldType;
 
 
 /**
@@ -54,6 +91,7 @@ public class TestExtendRedisClient implements Serializable
     private static final Log LOG = LogFactory.getLog(TestExtendRedisClient.class);
     
     private ExtendRedisClient client;
+    private String redisHost;
     
     
     @Before
@@ -63,6 +101,7 @@ public class TestExtendRedisClient implements Serializable
         {
             client = new ExtendRedisClient("main-host", 6480);
             client.ping();
+            redisHost = "main-host";
         }
         catch (Exception e)
         {
@@ -75,6 +114,7 @@ public class TestExtendRedisClient implements Serializable
             {
                 client = new ExtendRedisClient("localhost", 6480);
                 client.ping();
+                redisHost = "localhost";
             }
         }
         catch (Exception e)
@@ -89,6 +129,7 @@ public class TestExtendRedisClient implements Serializable
     public void finish() throws IOException
     {
     	client.clearDb();
+    	client.close();
     }
     
     
@@ -163,6 +204,28 @@ public class TestExtendRedisClient implements Serializable
     
     
     
+    @Test
+    public void test_mergeAll() 
+    {
+        List<JNO> jours = new ArrayList<>();
+        for (int ix=0; ix<25; ix++)
+        {
+            JNO jour = new JNO();
+            jour.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+            jour.setLibelle("anniversaire "+ix);
+            jours.add(jour);
+        }
+        client.setBulkChunkSize(10);
+        client.setBulkParallelism(2);
+        BulkResult<JNO> result = client.mergeAll(jours);
+        Assert.assertTrue("Des elements n'ont pas ete merges", result.isSuccess());
+        Assert.assertEquals("Nombre incorrect d'elements merges", 25, result.getSucceeded().size());
+        Assert.assertEquals("Nombre incorrect de json", 25, client.size(new JNO().getIndex()+":*"));
+        Assert.assertEquals("Nombre incorrect de hash d'index", 25, client.size(JNO.class.getName()+":*"));
+    }
+    
+    
+    
     @Test
     public void test_findByExpression() 
     {
@@ -194,6 +257,72 @@ public class TestExtendRedisClient implements Serializable
     
     
     
+    @Test
+    public void test_findByExpression_indexedPayload() 
+    {
+        client.setStorageMode(RedisStorageMode.INDEXED_PAYLOAD);
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        
+        JNO anniversaire2 = new JNO();
+        anniversaire2.setOid("230219821820");
+        anniversaire2.setDateEvent(DateUtil.parseCalendar("23/02/1982 18:18", "dd/MM/yyyy HH:mm"));
+        anniversaire2.setLibelle("anniversaire Steph");
+        client.merge(Arrays.asList(anniversaire, anniversaire2));
+        
+        try 
+        {
+            List<JNO> jours = client.findByExpression(JNO.class, "Lud*");
+            Assert.assertTrue("Nombre incorrect d'elements remontes", CollectionUtil.isNotEmpty(jours)&&jours.size()==1);
+            Assert.assertEquals("Element incorrect", "anniversaire Ludo", jours.get(0).getLibelle());
+            
+            //retour au mode par reference: le json du hash ne doit pas rester
+            client.setStorageMode(RedisStorageMode.KEY_REFERENCE);
+            anniversaire.setLibelle("anniversaire Ludovic");
+            client.merge(anniversaire);
+            Assert.assertFalse("Json perime conserve dans le hash d'index", client.getSharedJedisPooled()
+                    .hexists(JNO.class.getName()+":"+anniversaire.getOid(), "payload_object"));
+        }
+        catch (Exception e)
+        {
+            LOG.fatal(e,e);
+            Assert.fail("Aucun element remonte");
+        }
+    }
+    
+    
+    
+    @Test
+    public void test_streamByExpression() throws Exception
+    {
+        List<JNO> jours = new ArrayList<>();
+        for (int ix=0; ix<30; ix++)
+        {
+            JNO jour = new JNO();
+            jour.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+            jour.setLibelle("anniversaire "+ix);
+            jours.add(jour);
+        }
+        client.merge(jours);
+        long count = client.streamByExpression(JNO.class, new EQuery("anniversa*"), 7).count();
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 30, count);
+        
+        EQuery triee = new EQuery("anniversa*");
+        triee.setSortBy("oid", false);
+        List<String> attendus = new ArrayList<>();
+        for (JNO jour : client.findByExpression(JNO.class, triee))
+        {
+            attendus.add(jour.getOid());
+        }
+        List<String> pagines = new ArrayList<>();
+        client.streamByExpression(JNO.class, triee, 7).forEach(jour -> pagines.add(jour.getOid()));
+        Assert.assertEquals("Ordre du tri non respecte par les pages", attendus, pagines);
+    }
+    
+    
+    
     @Test
     public void test_findByCriteria() 
     {
@@ -255,4 +384,660 @@ public class TestExtendRedisClient implements Serializable
             Assert.fail("Aucun element remonte");
         }
     }
+    
+    
+    
+    @Test
+    public void test_put_ttl() 
+    {
+        Map<String, String> entries = new HashMap<>();
+        for (int ix=0; ix<10000; ix++)
+        {
+            entries.put("LIXBOX:TEST:ttl:"+ix, "valeur"+ix);
+        }
+        long start = System.currentTimeMillis();
+        Assert.assertTrue("Ecriture en echec", client.put(entries, 60000));
+        LOG.info("10000 cles avec ttl ecrites en "+(System.currentTimeMillis()-start)+" ms");
+        Assert.assertEquals("Nombre incorrect de cles", 10000, client.size("LIXBOX:TEST:ttl:*"));
+        Assert.assertTrue("Ttl absent", client.getSharedJedisPooled().pttl("LIXBOX:TEST:ttl:1")>0);
+    }
+    
+    
+    
+    @Test
+    public void test_indexSchema() 
+    {
+        RedisIndexSchema schema = RedisIndexSchema.of(new JNO());
+        Assert.assertSame("Le schema n'est pas mis en cache", schema, RedisIndexSchema.of(new JNO()));
+        Assert.assertEquals("Type incorrect", FieldType.NUMERIC, schema.getFieldType("dateEvent"));
+        Assert.assertEquals("Type incorrect", FieldType.TEXT, schema.getFieldType("libelle"));
+        Assert.assertEquals("Empreinte instable", schema.getFingerprint(), RedisIndexSchema.of(new JNO()).getFingerprint());
+        
+        JNO criteria = new JNO();
+        criteria.setLibelle("anniversaire");
+        Assert.assertTrue("Requete incorrecte", RedisSearchQueryHelper.toQueryByCriteria(criteria).contains("@libelle:anniversaire"));
+    }
+    
+    
+    
+    @Test
+    public void test_indexRegistry_adoption() throws Exception
+    {
+        JNO anniversaire = new JNO();
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        client.merge(anniversaire);
+        String fingerprintKey = "LIXBOX:INDEX:"+JNO.class.getName();
+        String fingerprint = client.get(fingerprintKey);
+        Assert.assertNotNull("Empreinte absente", fingerprint);
+        
+        client.clearDb();
+        Assert.assertEquals("Empreinte supprimee par clearDb", fingerprint, client.get(fingerprintKey));
+        
+        client.remove(fingerprintKey);
+        try (ExtendRedisClient other = new ExtendRedisClient(redisHost, 6480))
+        {
+            other.merge(anniversaire);
+        }
+        Assert.assertEquals("Index existant non adopte", fingerprint, client.get(fingerprintKey));
+        Assert.assertEquals("Entite non indexee", 1, client.findByExpression(JNO.class, "anniversa*").size());
+    }
+    
+    
+    
+    @Test
+    public void test_redisIndexed() throws Exception
+    {
+        Assert.assertNotNull("Accesseur d'index non genere", RedisIndexAccessors.forClass(Evenement.class));
+        Evenement anniversaire = new Evenement();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        anniversaire.setTypeJour(TypeJour.test2);
+        client.merge(anniversaire);
+        
+        Evenement criteria = new Evenement();
+        criteria.setTypeJour(TypeJour.test2);
+        List<Evenement> evenements = client.findByExpression(Evenement.class, RedisSearchQueryHelper.toQueryByCriteria(criteria));
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 1, evenements.size());
+        Assert.assertEquals("Element incorrect", "anniversaire Ludo", evenements.get(0).getLibelle());
+        evenements = client.findByExpression(Evenement.class, "@dateEvent:["+anniversaire.getDateEvent().getTimeInMillis()+" +inf]");
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 1, evenements.size());
+    }
+    
+    
+    
+    @Test
+    public void test_remove_indexHash() throws Exception
+    {
+        List<String> oids = new ArrayList<>();
+        for (int ix=0; ix<10; ix++)
+        {
+            JNO jour = new JNO();
+            jour.setOid("2209198210"+ix);
+            jour.setLibelle("anniversaire "+ix);
+            client.merge(jour);
+            oids.add(jour.getOid());
+        }
+        client.remove(JNO.class, oids.get(0));
+        Assert.assertFalse("Le hash d'index n'est pas supprime", client.containsKey(JNO.class.getName()+":"+oids.get(0)));
+        Assert.assertEquals("Nombre incorrect de cles supprimees", 8, client.remove(JNO.class, oids.subList(1, 5)));
+        Assert.assertEquals("Nombre incorrect d'index restants", 5, client.size(JNO.class.getName()+":*"));
+        
+        //creation d'orphelins: suppression du json seul
+        client.remove(new JNO().getIndex()+":"+oids.get(5), new JNO().getIndex()+":"+oids.get(6));
+        RedisOrphanSweeper sweeper = new RedisOrphanSweeper(client, JNO.class, 1);
+        Assert.assertEquals("Debit de suppression non respecte", 1, sweeper.sweep());
+        for (int ix=0; ix<10 && sweeper.getDeletedCount()<2; ix++)
+        {
+            sweeper.sweep();
+        }
+        Assert.assertEquals("Nombre incorrect d'orphelins supprimes", 2, sweeper.getDeletedCount());
+        Assert.assertEquals("Nombre incorrect d'index restants", 3, client.size(JNO.class.getName()+":*"));
+    }
+    
+    
+    
+    @Test
+    public void test_preparedQuery() throws Exception
+    {
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire-Ludo");
+        client.merge(anniversaire);
+        JNO anniversaire2 = new JNO();
+        anniversaire2.setOid("230219821820");
+        anniversaire2.setDateEvent(DateUtil.parseCalendar("23/02/1982 18:18", "dd/MM/yyyy HH:mm"));
+        anniversaire2.setLibelle("anniversaire-Steph");
+        client.merge(anniversaire2);
+        
+        PreparedRedisQuery<JNO> query = PreparedRedisQuery.prepare(JNO.class, "@libelle:$lib @dateEvent:[$from $to]");
+        Assert.assertEquals("Parametres incorrects", Arrays.asList("lib", "from", "to"), query.getParameterNames());
+        List<JNO> jours = query.execute(client, "anniversaire-Ludo", 
+                DateUtil.parseCalendar("01/09/1982 00:00", "dd/MM/yyyy HH:mm"), 
+                DateUtil.parseCalendar("30/09/1982 00:00", "dd/MM/yyyy HH:mm"));
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 1, jours.size());
+        Assert.assertEquals("Element incorrect", "220919821010", jours.get(0).getOid());
+        jours = query.execute(client, "anniversaire-Steph", 0, Long.MAX_VALUE);
+        Assert.assertEquals("Element incorrect", "230219821820", jours.get(0).getOid());
+    }
+    
+    
+    
+    @Test
+    public void test_payloadCodec() throws Exception
+    {
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        client.merge(anniversaire);
+        
+        client.setPayloadCodec(new DeflatePayloadCodec(JsonPayloadCodec.INSTANCE, 0));
+        JNO anniversaire2 = new JNO();
+        anniversaire2.setOid("230219821820");
+        anniversaire2.setDateEvent(DateUtil.parseCalendar("23/02/1982 18:18", "dd/MM/yyyy HH:mm"));
+        anniversaire2.setLibelle("anniversaire Steph");
+        client.merge(anniversaire2);
+        
+        Assert.assertEquals("Element incorrect", "anniversaire Steph", client.findById(JNO.class, "230219821820").getLibelle());
+        Assert.assertEquals("Element incorrect", "anniversaire Ludo", client.findById(JNO.class, "220919821010").getLibelle());
+        List<JNO> jours = client.findByExpression(JNO.class, "anniversa*");
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 2, jours.size());
+    }
+    
+    
+    
+    @Test
+    public void test_nearCache() 
+    {
+        client.enableNearCache(1000);
+        client.put("LIXBOX:TEST:nearCache", "valeur");
+        Assert.assertEquals("Valeur incorrecte", "valeur", client.get("LIXBOX:TEST:nearCache"));
+        Assert.assertEquals("Valeur incorrecte", "valeur", client.get("LIXBOX:TEST:nearCache"));
+        Assert.assertTrue("Aucun hit dans le cache local", client.getNearCacheStats().getHitCount()>0);
+        
+        client.put("LIXBOX:TEST:nearCache", "nouvelle valeur");
+        Assert.assertEquals("Cache local non invalide", "nouvelle valeur", client.get("LIXBOX:TEST:nearCache"));
+    }
+    
+    
+    
+    @Test
+    public void test_readReplica() throws Exception
+    {
+        client.setReplicas(Arrays.asList(new HostAndPort(redisHost, 6480), new HostAndPort(redisHost, 1)));
+        client.setReadMode(RedisReadMode.REPLICA_PREFERRED);
+        JNO anniversaire = new JNO();
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        anniversaire = client.merge(anniversaire);
+        client.put("LIXBOX:TEST:replica", "valeur");
+        for (int ix=0; ix<10; ix++)
+        {
+            Assert.assertEquals("Valeur incorrecte", "valeur", client.get("LIXBOX:TEST:replica"));
+            Assert.assertEquals("Element incorrect", "anniversaire Ludo", 
+                    client.findById(JNO.class, anniversaire.getOid()).getLibelle());
+        }
+        Assert.assertEquals("Nombre incorrect d'elements remontes", 1, 
+                client.findByExpression(JNO.class, new EQuery("anniversa*"), RedisReadMode.NEAREST).size());
+        Assert.assertEquals("Element incorrect", "anniversaire Ludo", 
+                client.findById(JNO.class, anniversaire.getOid(), RedisReadMode.MASTER).getLibelle());
+    }
+    
+    
+    
+    @Test
+    public void test_writeBehind() throws Exception
+    {
+        JNO compteur = new JNO();
+        compteur.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        try (RedisWriteBehindBuffer buffer = new RedisWriteBehindBuffer(client, 100, 1000, 3600000))
+        {
+            for (int ix=0; ix<1000; ix++)
+            {
+                JNO version = new JNO();
+                version.setOid(compteur.getOid());
+                version.setDateEvent(compteur.getDateEvent());
+                version.setLibelle("compteur "+ix);
+                compteur = buffer.merge(version);
+            }
+            Assert.assertEquals("Mises a jour non fusionnees", 1, buffer.getPendingCount());
+            Assert.assertEquals("Mises a jour non fusionnees", 999, buffer.getCoalescedCount());
+            Assert.assertTrue("Ecriture en echec", buffer.flush().isSuccess());
+            Assert.assertEquals("Element incorrect", "compteur 999", client.findById(JNO.class, compteur.getOid()).getLibelle());
+            
+            compteur.setLibelle("compteur final");
+            buffer.merge(compteur);
+        }
+        Assert.assertEquals("Tampon non vide a la fermeture", "compteur final", 
+                client.findById(JNO.class, compteur.getOid()).getLibelle());
+    }
+    
+    
+    
+    @Test
+    public void test_compareAndMerge() throws Exception
+    {
+        Compteur compteur = new Compteur();
+        Assert.assertTrue("Creation en echec", client.compareAndMerge(compteur).isMerged());
+        String oid = compteur.getOid();
+        
+        Compteur lecteur1 = client.findById(Compteur.class, oid);
+        Compteur lecteur2 = client.findById(Compteur.class, oid);
+        lecteur1.setValeur(1);
+        Assert.assertTrue("Ecriture en echec", client.compareAndMerge(lecteur1).isMerged());
+        lecteur2.setValeur(2);
+        MergeResult<Compteur> conflit = client.compareAndMerge(lecteur2);
+        Assert.assertTrue("Conflit non detecte", conflit.isConflict());
+        Assert.assertEquals("Version stockee incorrecte", lecteur1.getVersion().getTimeInMillis(), 
+                conflit.getStoredVersion().getTimeInMillis());
+        Assert.assertEquals("Valeur ecrasee", 1, client.findById(Compteur.class, oid).getValeur());
+        
+        Compteur supprime = client.findById(Compteur.class, oid);
+        supprime.setOid("compteur-supprime");
+        MergeResult<Compteur> absent = client.compareAndMerge(supprime);
+        Assert.assertTrue("Conflit non detecte sur une entite absente", absent.isConflict());
+        Assert.assertNull("Version stockee inattendue", absent.getStoredVersion());
+        
+        //hash d'index ecrit avant le versionnement: pas de version_object
+        String indexHashKey = Compteur.class.getName()+":"+oid;
+        client.getSharedJedisPooled().hdel(indexHashKey, "version_object");
+        Compteur migre = client.findById(Compteur.class, oid);
+        Assert.assertTrue("Entite sans version indexee refusee", client.compareAndMerge(migre).isMerged());
+        Assert.assertEquals("Version non indexee", Long.toString(migre.getVersion().getTimeInMillis()), 
+                client.getSharedJedisPooled().hget(indexHashKey, "version_object"));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread=0; thread<8; thread++)
+        {
+            futures.add(executor.submit(() -> {
+                int conflicts = 0;
+                for (int ix=0; ix<50; ix++)
+                {
+                    MergeResult<Compteur> result;
+                    do
+                    {
+                        Compteur courant = client.findById(Compteur.class, oid);
+                        courant.setValeur(courant.getValeur()+1);
+                        result = client.compareAndMerge(courant);
+                        conflicts += result.isConflict()?1:0;
+                    }
+                    while (result.isConflict());
+                }
+                return conflicts;
+            }));
+        }
+        int conflicts = 0;
+        for (Future<Integer> future : futures)
+        {
+            conflicts += future.get();
+        }
+        executor.shutdown();
+        LOG.info("400 increments avec "+conflicts+" conflits rejoues");
+        Assert.assertEquals("Increments perdus", 401, client.findById(Compteur.class, oid).getValeur());
+    }
+    
+    
+    
+    @Test
+    public void test_scriptLibrary() throws Exception
+    {
+        JNO anniversaire = new JNO();
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        anniversaire = client.merge(anniversaire);
+        
+        client.getSharedJedisPooled().scriptFlush();
+        anniversaire.setLibelle("anniversaire Ludovic");
+        client.merge(anniversaire);
+        Assert.assertEquals("Ecriture perdue apres SCRIPT FLUSH", "anniversaire Ludovic", 
+                client.findById(JNO.class, anniversaire.getOid()).getLibelle());
+        
+        client.getSharedJedisPooled().scriptFlush();
+        List<JNO> jours = new ArrayList<>();
+        for (int ix=0; ix<10; ix++)
+        {
+            JNO jour = new JNO();
+            jour.setDateEvent(DateUtil.parseCalendar("0"+ix+"/01/2024 10:00", "dd/MM/yyyy HH:mm"));
+            jour.setLibelle("jour "+ix);
+            jours.add(jour);
+        }
+        Assert.assertTrue("Ecriture en masse en echec apres SCRIPT FLUSH", client.mergeAll(jours).isSuccess());
+        
+        Assert.assertTrue("Entite absente", client.touch(JNO.class, anniversaire.getOid(), 60000));
+        Assert.assertTrue("Ttl absent", client.getSharedJedisPooled().pttl(anniversaire.getKey())>0);
+        Assert.assertTrue("Entite absente", client.touch(JNO.class, anniversaire.getOid(), 0));
+        Assert.assertEquals("Ttl present", -1, client.getSharedJedisPooled().pttl(anniversaire.getKey()));
+        Assert.assertFalse("Entite inconnue prolongee", client.touch(JNO.class, "inconnu", 60000));
+    }
+    
+    
+    
+    @Test
+    public void test_async_get() throws Exception
+    {
+        client.put("LIXBOX:TEST:async1", "valeur1");
+        client.put("LIXBOX:TEST:async2", "valeur2");
+        try (ExtendRedisAsyncClient asyncClient = new ExtendRedisAsyncClient(client))
+        {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int ix=0; ix<100; ix++)
+            {
+                futures.add(asyncClient.get("LIXBOX:TEST:async"+(ix%2+1)));
+            }
+            for (int ix=0; ix<100; ix++)
+            {
+                Assert.assertEquals("Valeur incorrecte", "valeur"+(ix%2+1), futures.get(ix).get());
+            }
+            Assert.assertTrue("Cle nulle acceptee", asyncClient.get(null).isCompletedExceptionally());
+            
+            List<CompletableFuture<JNO>> merges = new ArrayList<>();
+            for (int ix=0; ix<50; ix++)
+            {
+                JNO jour = new JNO();
+                jour.setOid("async"+ix);
+                jour.setLibelle("anniversaire "+ix);
+                merges.add(asyncClient.merge(jour));
+            }
+            for (CompletableFuture<JNO> merge : merges)
+            {
+                merge.get();
+            }
+            Assert.assertEquals("Merges groupes perdus", 50, client.size(new JNO().getIndex()+":async*"));
+        }
+        ExtendRedisAsyncClient closedClient = new ExtendRedisAsyncClient(client);
+        closedClient.close();
+        Assert.assertTrue("Lecture acceptee apres fermeture", 
+                closedClient.get("LIXBOX:TEST:async1").isCompletedExceptionally());
+    }
+    
+    
+    
+    @Test
+    public void test_boundedAcquisition_load() throws Exception
+    {
+        int tasks = 10000;
+        client.enableBoundedAcquisition(30000);
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        client.merge(anniversaire);
+        
+        ExecutorService executor;
+        try
+        {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException e)
+        {
+            LOG.warn("Threads virtuels indisponibles, utilisation d'un pool de 500 threads");
+            executor = Executors.newFixedThreadPool(500);
+        }
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[tasks];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int ix=0; ix<tasks; ix++)
+        {
+            int index = ix;
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                try
+                {
+                    client.findById(JNO.class, "220919821010");
+                }
+                catch (Exception e)
+                {
+                    failures.incrementAndGet();
+                }
+                latencies[index] = System.nanoTime()-start;
+            }));
+        }
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+        Arrays.sort(latencies);
+        LOG.info("findById p50: "+latencies[tasks/2]/1000000+" ms, p99: "+latencies[tasks*99/100]/1000000+" ms, max: "+latencies[tasks-1]/1000000+" ms");
+        Assert.assertEquals("Des appels ont echoue faute de connexion", 0, failures.get());
+        
+        //au-dela de maxWait, l'appelant recoit l'exception du pool
+        try (ExtendRedisClient borne = new ExtendRedisClient(ExtendRedisClient.getConfigForPool(1), redisHost, 6480))
+        {
+            borne.enableBoundedAcquisition(200);
+            JedisPooled pool = borne.getSharedJedisPooled();
+            try (Connection occupee = pool.getPool().getResource())
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    pool.get("LIXBOX:TEST:borne");
+                    Assert.fail("Connexion obtenue sur un pool epuise");
+                }
+                catch (JedisException e)
+                {
+                    Assert.assertTrue("Attente de maxWait non respectee", 
+                            System.nanoTime()-start>=TimeUnit.MILLISECONDS.toNanos(200));
+                }
+            }
+        }
+    }
+    
+    
+    
+    @Test
+    public void test_benchmark_pool() 
+    {
+        int iterations = 2000;
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        client.merge(anniversaire);
+        
+        //avant: un pool par appel
+        long start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            try (JedisPooled jedis = new JedisPooled(ExtendRedisClient.getConfigForPool(20), redisHost, 6480))
+            {
+                jedis.get(anniversaire.getKey());
+            }
+        }
+        double opsPerCallPool = iterations/((System.nanoTime()-start)/1e9);
+        
+        //apres: pool partage
+        start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            client.get(anniversaire.getKey());
+        }
+        double opsGet = iterations/((System.nanoTime()-start)/1e9);
+        start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            client.merge(anniversaire);
+        }
+        double opsMerge = iterations/((System.nanoTime()-start)/1e9);
+        LOG.info("get avec un pool par appel: "+(long)opsPerCallPool+" ops/s");
+        LOG.info("get avec le pool partage: "+(long)opsGet+" ops/s");
+        LOG.info("merge avec le pool partage: "+(long)opsMerge+" ops/s");
+        Assert.assertSame("Le pool n'est pas partage", client.getSharedJedisPooled(), client.getSharedJedisPooled());
+    }
+    
+    
+    
+    @Test
+    public void test_benchmark_indexFieldEncoder() 
+    {
+        int iterations = 20000;
+        JNO anniversaire = new JNO();
+        anniversaire.setOid("220919821010");
+        anniversaire.setDateEvent(DateUtil.parseCalendar("22/09/1982 10:18", "dd/MM/yyyy HH:mm"));
+        anniversaire.setLibelle("anniversaire Ludo");
+        anniversaire.setTypeJour(TypeJour.test1);
+        Map<String, Object> indexFields = anniversaire.getIndexFieldValues();
+        
+        //avant: une serialisation json par champ
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            Map<String, String> jsonIndexField = new HashMap<>();
+            for (Map.Entry<String, Object> entry : indexFields.entrySet())
+            {
+                jsonIndexField.put(entry.getKey(), JsonUtil.transformObjectToJson(entry.getValue(), false).replace("\"", ""));
+            }
+        }
+        long durationJson = System.nanoTime()-start;
+        long allocatedJson = getAllocatedBytes()-allocated;
+        
+        //apres: encodeur specialise par classe
+        RedisIndexFieldEncoder encoder = RedisIndexFieldEncoder.forClass(JNO.class);
+        allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            encoder.encode(indexFields, 0);
+        }
+        long durationEncoder = System.nanoTime()-start;
+        long allocatedEncoder = getAllocatedBytes()-allocated;
+        LOG.info("encodage json: "+durationJson/iterations+" ns/op, "+allocatedJson/iterations+" octets/op");
+        LOG.info("encodage specialise: "+durationEncoder/iterations+" ns/op, "+allocatedEncoder/iterations+" octets/op");
+        Assert.assertEquals("Encodage incorrect", Long.toString(anniversaire.getDateEvent().getTimeInMillis()), 
+                encoder.encode(indexFields, 0).get("dateEvent"));
+        Assert.assertTrue("L'encodeur specialise alloue plus que json", allocatedEncoder<=allocatedJson);
+    }
+    
+    
+    
+    @Test
+    public void test_benchmark_sanitizer() 
+    {
+        int iterations = 200000;
+        String[] values = {"anniversaire Ludo", "ludovic.terral@lixbox.fr", " 22-09-1982 ", "deja_normalise"};
+        
+        //avant: remplacements chaines
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            String value = values[ix%values.length];
+            value.replace('-', '_').replace('@', '_').replace('.', '_').trim();
+        }
+        long durationChain = System.nanoTime()-start;
+        long allocatedChain = getAllocatedBytes()-allocated;
+        
+        //apres: passe unique
+        allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        for (int ix=0; ix<iterations; ix++)
+        {
+            RedisSearchValueSanitizer.sanitizeValue(values[ix%values.length]);
+        }
+        long durationSinglePass = System.nanoTime()-start;
+        long allocatedSinglePass = getAllocatedBytes()-allocated;
+        LOG.info("sanitizer par remplacements: "+durationChain/iterations+" ns/op, "+allocatedChain/iterations+" octets/op");
+        LOG.info("sanitizer en passe unique: "+durationSinglePass/iterations+" ns/op, "+allocatedSinglePass/iterations+" octets/op");
+        for (String value : values)
+        {
+            Assert.assertEquals("Normalisation incorrecte", 
+                    value.replace('-', '_').replace('@', '_').replace('.', '_').trim(), 
+                    RedisSearchValueSanitizer.sanitizeValue(value));
+        }
+        Assert.assertEquals("Restauration incorrecte", Arrays.asList("a", "b"), 
+                RedisSearchValueSanitizer.restoreFieldValueToList(RedisSearchValueSanitizer.sanitizeValue(Arrays.asList("a", "b"))));
+        Assert.assertTrue("La passe unique alloue plus que les remplacements", allocatedSinglePass<=allocatedChain);
+    }
+    
+    
+    
+    @Test
+    public void test_typeRegistry_classLoader() throws Exception
+    {
+        RedisTypeRegistry registry = new RedisTypeRegistry();
+        WeakReference<ClassLoader> loader = resolveInIsolatedLoader(registry);
+        for (int ix=0; ix<50 && loader.get()!=null; ix++)
+        {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull("Le registre retient le classloader abandonne", loader.get());
+    }
+    
+    
+    
+    private static WeakReference<ClassLoader> resolveInIsolatedLoader(RedisTypeRegistry registry) throws IOException
+    {
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        IsolatedClassLoader loader = new IsolatedClassLoader(TypeIsole.class.getName(), previous);
+        Thread.currentThread().setContextClassLoader(loader);
+        try
+        {
+            Assert.assertSame("Type non charge par le classloader du thread", loader, 
+                    registry.resolve(TypeIsole.class.getName()).getClassLoader());
+        }
+        finally
+        {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+        return new WeakReference<>(loader);
+    }
+    
+    
+    
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+    
+    
+    
+    public static class TypeIsole
+    {
+    }
+    
+    
+    
+    /**
+     * Ce classloader définit lui-même une classe au lieu de la déléguer.
+     */
+    private static class IsolatedClassLoader extends ClassLoader
+    {
+        private final String className;
+        private final byte[] bytecode;
+        
+        private IsolatedClassLoader(String className, ClassLoader parent) throws IOException
+        {
+            super(parent);
+            this.className = className;
+            try (InputStream in = parent.getResourceAsStream(className.replace('.', '/')+".class"))
+            {
+                this.bytecode = in.readAllBytes();
+            }
+        }
+        
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (!className.equals(name))
+            {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name))
+            {
+                Class<?> type = findLoadedClass(name);
+                return type!=null?type:defineClass(name, bytecode, 0, bytecode.length);
+            }
+        }
+    }
 }